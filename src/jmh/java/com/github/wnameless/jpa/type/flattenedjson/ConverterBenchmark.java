@@ -0,0 +1,117 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+
+  @Param({ "small", "medium", "large" })
+  String documentSize;
+
+  JsonNodeConverter jsonNodeConverter = new JsonNodeConverter();
+
+  TestModelAttrConverter testModelAttrConverter = new TestModelAttrConverter();
+
+  JsonNode jsonNode;
+  String flattenedJsonNode;
+
+  TestModelAttr testModelAttr;
+  String flattenedTestModelAttr;
+
+  @Setup
+  public void setup() {
+    int depth;
+    int width;
+    switch (documentSize) {
+      case "small":
+        depth = 2;
+        width = 4;
+        break;
+      case "medium":
+        depth = 4;
+        width = 32;
+        break;
+      default:
+        depth = 8;
+        width = 256;
+    }
+
+    jsonNode = createJsonNode(new ObjectMapper(), depth, width);
+    flattenedJsonNode = jsonNodeConverter.convertToDatabaseColumn(jsonNode);
+
+    testModelAttr = new TestModelAttr();
+    for (int i = 0; i < depth * width; i++) {
+      testModelAttr.getNumbers().add(i);
+      Map<String, String> words = new LinkedHashMap<>();
+      words.put("ABC", "XYZ" + i);
+      words.put("DEF", "uvw" + i);
+      testModelAttr.getWords().add(words);
+    }
+    flattenedTestModelAttr =
+        testModelAttrConverter.convertToDatabaseColumn(testModelAttr);
+  }
+
+  private JsonNode createJsonNode(ObjectMapper objectMapper, int depth,
+      int width) {
+    ObjectNode node = objectMapper.createObjectNode();
+    node.put("name", "depth" + depth);
+    node.put("ratio", depth / 3.0);
+    node.put("flag", depth % 2 == 0);
+    ArrayNode numbers = node.putArray("numbers");
+    ArrayNode words = node.putArray("words");
+    for (int i = 0; i < width; i++) {
+      numbers.add(i);
+      words.addObject().put("ABC", "XYZ" + i).put("e.f", "\"quoted\"");
+    }
+    if (depth > 1) {
+      node.set("child", createJsonNode(objectMapper, depth - 1, width));
+    }
+    return node;
+  }
+
+  @Benchmark
+  public String jsonNodeToDatabaseColumn() {
+    return jsonNodeConverter.convertToDatabaseColumn(jsonNode);
+  }
+
+  @Benchmark
+  public JsonNode jsonNodeToEntityAttribute() {
+    return jsonNodeConverter.convertToEntityAttribute(flattenedJsonNode);
+  }
+
+  @Benchmark
+  public String pojoToDatabaseColumn() {
+    return testModelAttrConverter.convertToDatabaseColumn(testModelAttr);
+  }
+
+  @Benchmark
+  public TestModelAttr pojoToEntityAttribute() {
+    return testModelAttrConverter
+        .convertToEntityAttribute(flattenedTestModelAttr);
+  }
+
+}
@@ -0,0 +1,62 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryDslHelperBenchmark {
+
+  QTestModel qTestModel = QTestModel.testModel;
+
+  String key = "words[0].ABC";
+
+  String value = "\"XYZ\"";
+
+  FlattenedJsonKeyPredicate<TestModelAttr> keyPredicate =
+      QueryDslHelper.flattenedJsonKey(qTestModel.testAttr, key);
+
+  @Benchmark
+  public BooleanExpression flattenedJsonLike() {
+    return QueryDslHelper.flattenedJsonLike(qTestModel.testAttr, key, value);
+  }
+
+  @Benchmark
+  public BooleanExpression flattenedJsonRegexpLike() {
+    return QueryDslHelper.flattenedJsonRegexpLike(qTestModel.testAttr, key,
+        value);
+  }
+
+  @Benchmark
+  public BooleanExpression flattenedJsonRegexpMatches() {
+    return QueryDslHelper.flattenedJsonRegexpMatches(qTestModel.testAttr, key,
+        value);
+  }
+
+  @Benchmark
+  public BooleanExpression flattenedJsonSubstringMatches() {
+    return QueryDslHelper.flattenedJsonSubstringMatches(qTestModel.testAttr,
+        key, value);
+  }
+
+  @Benchmark
+  public BooleanExpression flattenedJsonKeyRegexpLike() {
+    return keyPredicate.regexpLike(value);
+  }
+
+}
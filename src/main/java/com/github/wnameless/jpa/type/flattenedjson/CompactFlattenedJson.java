@@ -0,0 +1,260 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * 
+ * {@link CompactFlattenedJson} encodes flattened JSON strings into a compact
+ * form which fits in ordinary text columns. Every flattened key is stored as
+ * the length of the prefix shared with the previous key plus the rest of it,
+ * and the result is compressed by a {@link FlattenedJsonCodec} and encoded in
+ * Base64, ex: <i>~deflate~eJxjYGBg...</i>. <br>
+ * <br>
+ * Decoding always restores the original string exactly. Since no JSON starts
+ * with <i>~</i>, plain flattened JSON strings are detected and returned as
+ * they are, so columns can be migrated row by row.
+ *
+ */
+public final class CompactFlattenedJson {
+
+  private static final char MARKER = '~';
+
+  private static final int RAW = 0;
+  private static final int PAIRS = 1;
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private CompactFlattenedJson() {}
+
+  /**
+   * Checks if given string is in the compact form.
+   * 
+   * @param data
+   *          a flattened JSON string in any form
+   * @return true if the string is in the compact form, false otherwise
+   */
+  public static boolean isCompact(String data) {
+    return data != null && !data.isEmpty() && data.charAt(0) == MARKER;
+  }
+
+  /**
+   * Encodes given flattened JSON string into the compact form.
+   * 
+   * @param flattenedJson
+   *          a flattened JSON string
+   * @param codec
+   *          a {@link FlattenedJsonCodec}
+   * @return a compact string or null if given string is null
+   */
+  public static String encode(String flattenedJson, FlattenedJsonCodec codec) {
+    if (flattenedJson == null) return null;
+    String name = codec.getName();
+    if (name.isEmpty() || name.indexOf(MARKER) >= 0
+        || !name.trim().equals(name)) {
+      throw new IllegalArgumentException("Invalid codec name: " + name);
+    }
+
+    ByteArrayOutputStream bytes =
+        new ByteArrayOutputStream(flattenedJson.length() / 2 + 16);
+    try {
+      bytes.write((MARKER + name + MARKER).getBytes(US_ASCII));
+      try (OutputStream out = codec.encode(Base64.getEncoder().wrap(bytes))) {
+        int[] offsets = pairOffsets(flattenedJson);
+        if (offsets == null) {
+          out.write(RAW);
+          writeString(out, flattenedJson);
+        } else {
+          out.write(PAIRS);
+          writeVarint(out, offsets.length / 3);
+          writePairs(out, flattenedJson, offsets);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return new String(bytes.toByteArray(), US_ASCII);
+  }
+
+  /**
+   * Decodes given string into the original flattened JSON string if it is in
+   * the compact form. The codec is chosen by the name stored in the string,
+   * which is either given codec or {@link FlattenedJsonCodec#DEFLATE}.
+   * 
+   * @param data
+   *          a flattened JSON string in any form
+   * @param codec
+   *          a {@link FlattenedJsonCodec} or null
+   * @return a flattened JSON string
+   * @throws IllegalArgumentException
+   *           if the codec of the compact string is unknown
+   */
+  public static String decode(String data, FlattenedJsonCodec codec) {
+    if (!isCompact(data)) return data;
+
+    int end = data.indexOf(MARKER, 1);
+    String name = end < 0 ? "" : data.substring(1, end);
+    if (codec == null || !codec.getName().equals(name)) {
+      if (!FlattenedJsonCodec.DEFLATE.getName().equals(name)) {
+        throw new IllegalArgumentException("Unknown codec: " + name);
+      }
+      codec = FlattenedJsonCodec.DEFLATE;
+    }
+
+    byte[] bytes = data.getBytes(US_ASCII);
+    try (DataInputStream in = new DataInputStream(
+        codec.decode(Base64.getDecoder().wrap(new ByteArrayInputStream(bytes,
+            end + 1, bytes.length - end - 1))))) {
+      int mode = in.read();
+      if (mode == RAW) return readString(in);
+      if (mode != PAIRS) throw new IOException("Unknown mode: " + mode);
+
+      int size = readVarint(in);
+      StringBuilder json = new StringBuilder(bytes.length * 2);
+      StringBuilder key = new StringBuilder();
+      json.append('{');
+      for (int i = 0; i < size; i++) {
+        key.setLength(readVarint(in));
+        key.append(readString(in));
+        json.append(i == 0 ? "\"" : ",\"").append(key).append("\":")
+            .append(readString(in));
+      }
+      return json.append('}').toString();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Returns the key start, key end and value end of every pair, or null if
+  // the string can't be restored from its pairs exactly
+  private static int[] pairOffsets(String json) throws IOException {
+    int size = 0;
+    int[] offsets = new int[48];
+    int expectedKeyStart = 2;
+
+    try (JsonParser parser = jsonFactory.createParser(json)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+      JsonToken token;
+      while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+        int keyStart = (int) parser.getTokenLocation().getCharOffset() + 1;
+        JsonToken value = parser.nextToken();
+        int keyEnd = (int) parser.getTokenLocation().getCharOffset() - 2;
+        if (value.isStructStart()) {
+          parser.skipChildren();
+        } else {
+          parser.finishToken();
+        }
+        int valueEnd = (int) parser.getCurrentLocation().getCharOffset();
+
+        if (keyStart != expectedKeyStart || keyEnd < keyStart
+            || !json.startsWith("\":", keyEnd)) {
+          return null;
+        }
+        if (size + 3 > offsets.length) {
+          offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[size++] = keyStart;
+        offsets[size++] = keyEnd;
+        offsets[size++] = valueEnd;
+        expectedKeyStart = valueEnd + 2;
+      }
+
+      int objectEnd = size == 0 ? 1 : offsets[size - 1];
+      if (token != JsonToken.END_OBJECT || json.length() != objectEnd + 1
+          || parser.nextToken() != null) {
+        return null;
+      }
+    }
+
+    return Arrays.copyOf(offsets, size);
+  }
+
+  private static void writePairs(OutputStream out, String json, int[] offsets)
+      throws IOException {
+    int previousStart = 0;
+    int previousLength = 0;
+    for (int i = 0; i < offsets.length; i += 3) {
+      int keyStart = offsets[i];
+      int keyEnd = offsets[i + 1];
+      int limit = Math.min(previousLength, keyEnd - keyStart);
+      int shared = 0;
+      while (shared < limit && json.charAt(previousStart + shared) == json
+          .charAt(keyStart + shared)) {
+        shared++;
+      }
+      // Keeps surrogate pairs together
+      if (shared > 0
+          && Character.isHighSurrogate(json.charAt(keyStart + shared - 1))) {
+        shared--;
+      }
+
+      writeVarint(out, shared);
+      writeString(out, json.substring(keyStart + shared, keyEnd));
+      writeString(out, json.substring(keyEnd + 2, offsets[i + 2]));
+      previousStart = keyStart;
+      previousLength = keyEnd - keyStart;
+    }
+  }
+
+  private static void writeString(OutputStream out, String s)
+      throws IOException {
+    byte[] bytes = s.getBytes(UTF_8);
+    writeVarint(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[readVarint(in)];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static void writeVarint(OutputStream out, int value)
+      throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarint(InputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.read();
+      if (b < 0) throw new IOException("Unexpected end of compact data");
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+    throw new IOException("Malformed compact data");
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 
+ * {@link FlattenedJsonCodec} compresses the compact form of flattened JSON
+ * strings written by {@link CompactFlattenedJson}. The name of the codec is
+ * stored with every compact string, so it must be unique and must not be
+ * changed once data is written.
+ *
+ */
+public interface FlattenedJsonCodec {
+
+  /**
+   * A {@link FlattenedJsonCodec} of the Deflate compression from
+   * {@link java.util.zip}, which is always available for reading.
+   */
+  FlattenedJsonCodec DEFLATE = new FlattenedJsonCodec() {
+
+    @Override
+    public String getName() {
+      return "deflate";
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) {
+      return new DeflaterOutputStream(out);
+    }
+
+    @Override
+    public InputStream decode(InputStream in) {
+      return new InflaterInputStream(in);
+    }
+
+  };
+
+  /**
+   * Returns the name of this codec which contains neither <i>~</i> nor any
+   * whitespace.
+   * 
+   * @return the name of this codec
+   */
+  String getName();
+
+  /**
+   * Wraps given stream with a stream which compresses written bytes. Closing
+   * the returned stream must close given stream as well.
+   * 
+   * @param out
+   *          an {@link java.io.OutputStream OutputStream}
+   * @return a compressing {@link java.io.OutputStream OutputStream}
+   * @throws IOException
+   *           if any I/O error occurs
+   */
+  OutputStream encode(OutputStream out) throws IOException;
+
+  /**
+   * Wraps given stream with a stream which decompresses read bytes. Closing
+   * the returned stream must close given stream as well.
+   * 
+   * @param in
+   *          an {@link java.io.InputStream InputStream}
+   * @return a decompressing {@link java.io.InputStream InputStream}
+   * @throws IOException
+   *           if any I/O error occurs
+   */
+  InputStream decode(InputStream in) throws IOException;
+
+}
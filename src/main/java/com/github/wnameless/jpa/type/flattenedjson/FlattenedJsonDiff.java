@@ -0,0 +1,136 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * {@link FlattenedJsonDiff} holds the flattened keys which are changed
+ * between two flattened JSON strings, so only these keys have to be written
+ * back. <br>
+ * <br>
+ * Values are compared by their JSON text, and the target is kept as an
+ * {@link ImmutableFlattenedJson}, whose flattened JSON string reuses the
+ * text of all unchanged values instead of flattening them again.
+ *
+ */
+public final class FlattenedJsonDiff {
+
+  private final Map<String, String> changes;
+  private final List<String> removals;
+  private final ImmutableFlattenedJson target;
+
+  FlattenedJsonDiff(Map<String, String> changes, List<String> removals,
+      ImmutableFlattenedJson target) {
+    this.changes = Collections.unmodifiableMap(changes);
+    this.removals = Collections.unmodifiableList(removals);
+    this.target = target;
+  }
+
+  /**
+   * Computes the changes from one flattened JSON string to another.
+   *
+   * @param source
+   *          the flattened JSON string before changes, ex: the loaded one
+   * @param target
+   *          the flattened JSON string after changes
+   * @return a {@link FlattenedJsonDiff}
+   */
+  public static FlattenedJsonDiff between(String source, String target) {
+    return between(ImmutableFlattenedJson.of(source),
+        ImmutableFlattenedJson.of(target));
+  }
+
+  /**
+   * Computes the changes from one {@link ImmutableFlattenedJson} to another.
+   *
+   * @param source
+   *          the {@link ImmutableFlattenedJson} before changes
+   * @param target
+   *          the {@link ImmutableFlattenedJson} after changes
+   * @return a {@link FlattenedJsonDiff}
+   */
+  public static FlattenedJsonDiff between(ImmutableFlattenedJson source,
+      ImmutableFlattenedJson target) {
+    return source.diff(target);
+  }
+
+  /**
+   * Returns the added and modified flattened keys with the JSON text of their
+   * new values, in {@link StreamingJsonFlattener#CANONICAL_KEY_ORDER}.
+   *
+   * @return an unmodifiable map of flattened keys and JSON texts
+   */
+  public Map<String, String> getChanges() {
+    return changes;
+  }
+
+  /**
+   * Returns the removed flattened keys, in
+   * {@link StreamingJsonFlattener#CANONICAL_KEY_ORDER}.
+   *
+   * @return an unmodifiable list of flattened keys
+   */
+  public List<String> getRemovals() {
+    return removals;
+  }
+
+  /**
+   * Returns the number of changed and removed flattened keys.
+   *
+   * @return the number of changed and removed flattened keys
+   */
+  public int size() {
+    return changes.size() + removals.size();
+  }
+
+  /**
+   * Checks if nothing is changed.
+   *
+   * @return true if nothing is changed, false otherwise
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Returns the {@link ImmutableFlattenedJson} after changes.
+   *
+   * @return an {@link ImmutableFlattenedJson}
+   */
+  public ImmutableFlattenedJson getTarget() {
+    return target;
+  }
+
+  /**
+   * Returns the flattened JSON string after changes.
+   *
+   * @return a flattened JSON string
+   */
+  public String getFlattenedJson() {
+    return target.getFlattenedJson();
+  }
+
+  @Override
+  public String toString() {
+    return "FlattenedJsonDiff{changes=" + changes + ", removals=" + removals
+        + "}";
+  }
+
+}
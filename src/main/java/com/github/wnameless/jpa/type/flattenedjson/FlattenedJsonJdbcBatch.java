@@ -0,0 +1,165 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ *
+ * {@link FlattenedJsonJdbcBatch} feeds flattened JSON strings into a JDBC
+ * batch directly, so bulk loads skip the per-entity conversion of JPA and the
+ * persistence context. <br>
+ * <br>
+ * Elements are converted in chunks of the batch size by
+ * {@link ToFlattenedJsonConverter#convertAllToDatabaseColumns(List, ForkJoinPool)}
+ * and each chunk is executed as one JDBC batch. Committing the transaction is
+ * left to the caller.
+ *
+ */
+public final class FlattenedJsonJdbcBatch {
+
+  private FlattenedJsonJdbcBatch() {}
+
+  /**
+   *
+   * {@link StatementBinder} sets the parameters of a
+   * {@link java.sql.PreparedStatement PreparedStatement} for one element.
+   *
+   * @param <E>
+   *          the type of elements
+   *
+   */
+  @FunctionalInterface
+  public interface StatementBinder<E> {
+
+    /**
+     * Sets the parameters of given statement for given element.
+     *
+     * @param statement
+     *          a {@link java.sql.PreparedStatement PreparedStatement}
+     * @param element
+     *          an element
+     * @param flattenedJson
+     *          the flattened JSON string of the element
+     * @throws SQLException
+     *           if a parameter can't be set
+     */
+    void bind(PreparedStatement statement, E element, String flattenedJson)
+        throws SQLException;
+
+  }
+
+  /**
+   * Executes given statement in batches for all elements on the calling
+   * thread.
+   *
+   * @param <E>
+   *          the type of elements
+   * @param <T>
+   *          the type of the flattened JSON attribute
+   * @param statement
+   *          a {@link java.sql.PreparedStatement PreparedStatement}
+   * @param elements
+   *          a list of elements
+   * @param attribute
+   *          a function to get the flattened JSON attribute of an element
+   * @param converter
+   *          a {@link ToFlattenedJsonConverter} of the attribute
+   * @param binder
+   *          a {@link StatementBinder} to set the parameters of an element
+   * @param batchSize
+   *          the number of elements of a JDBC batch
+   * @return the update counts of all elements
+   * @throws SQLException
+   *           if any batch fails
+   */
+  public static <E, T> int[] executeBatch(PreparedStatement statement,
+      List<? extends E> elements, Function<? super E, ? extends T> attribute,
+      ToFlattenedJsonConverter<T> converter,
+      StatementBinder<? super E> binder, int batchSize) throws SQLException {
+    return executeBatch(statement, elements, attribute, converter, binder,
+        batchSize, null);
+  }
+
+  /**
+   * Executes given statement in batches for all elements. The attributes of
+   * each batch are converted across given
+   * {@link java.util.concurrent.ForkJoinPool ForkJoinPool} while the statement
+   * is only used on the calling thread.
+   *
+   * @param <E>
+   *          the type of elements
+   * @param <T>
+   *          the type of the flattened JSON attribute
+   * @param statement
+   *          a {@link java.sql.PreparedStatement PreparedStatement}
+   * @param elements
+   *          a list of elements
+   * @param attribute
+   *          a function to get the flattened JSON attribute of an element
+   * @param converter
+   *          a {@link ToFlattenedJsonConverter} of the attribute
+   * @param binder
+   *          a {@link StatementBinder} to set the parameters of an element
+   * @param batchSize
+   *          the number of elements of a JDBC batch
+   * @param pool
+   *          a {@link java.util.concurrent.ForkJoinPool ForkJoinPool} or null
+   *          to convert on the calling thread
+   * @return the update counts of all elements
+   * @throws SQLException
+   *           if any batch fails
+   */
+  public static <E, T> int[] executeBatch(PreparedStatement statement,
+      List<? extends E> elements, Function<? super E, ? extends T> attribute,
+      ToFlattenedJsonConverter<T> converter, StatementBinder<? super E> binder,
+      int batchSize, ForkJoinPool pool) throws SQLException {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+
+    int[] counts = new int[elements.size()];
+    int executed = 0;
+    List<T> attributes = new ArrayList<>(Math.min(batchSize, counts.length));
+    for (int from = 0; from < counts.length; from += batchSize) {
+      List<? extends E> chunk =
+          elements.subList(from, Math.min(from + batchSize, counts.length));
+
+      attributes.clear();
+      for (E element : chunk) {
+        attributes.add(attribute.apply(element));
+      }
+      List<String> flattened =
+          converter.convertAllToDatabaseColumns(attributes, pool);
+
+      for (int i = 0; i < chunk.size(); i++) {
+        binder.bind(statement, chunk.get(i), flattened.get(i));
+        statement.addBatch();
+      }
+      int[] batchCounts = statement.executeBatch();
+      System.arraycopy(batchCounts, 0, counts, executed, batchCounts.length);
+      executed += batchCounts.length;
+    }
+    return executed == counts.length ? counts : Arrays.copyOf(counts, executed);
+  }
+
+}
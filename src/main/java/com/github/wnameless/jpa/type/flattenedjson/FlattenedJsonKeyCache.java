@@ -0,0 +1,176 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * {@link FlattenedJsonKeyCache} is a bounded cache which resolves the parts of
+ * flattened keys, such as <i>numbers</i> and <i>abc</i> of
+ * <i>words[0].abc</i>, to shared instances while flattened JSON strings are
+ * unflattened, so the same names are not allocated again for every row. <br>
+ * <br>
+ * Names are kept in a fixed number of slots chosen by the hash of their
+ * characters, and a name replaces any other name in its slot, so the cache
+ * never grows beyond its max size and never blocks. Whole flattened keys are
+ * cached as well when {@link FlattenedJsonView} indexes them, so the keys of
+ * every view share the same instances whatever the symbol table of Jackson
+ * keeps.
+ *
+ */
+public final class FlattenedJsonKeyCache {
+
+  /**
+   * The default max size of a {@link FlattenedJsonKeyCache}.
+   */
+  public static final int DEFAULT_MAX_SIZE = 4096;
+
+  /**
+   * The max length of names to be cached. Longer names are never cached.
+   */
+  public static final int MAX_NAME_LENGTH = 64;
+
+  private final String[] slots;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a {@link FlattenedJsonKeyCache} of {@link #DEFAULT_MAX_SIZE}.
+   */
+  public FlattenedJsonKeyCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Creates a {@link FlattenedJsonKeyCache} of given max size, which is
+   * rounded up to a power of two.
+   * 
+   * @param maxSize
+   *          the max number of cached names
+   */
+  public FlattenedJsonKeyCache(int maxSize) {
+    if (maxSize < 1 || maxSize > 1 << 30) {
+      throw new IllegalArgumentException("Invalid max size: " + maxSize);
+    }
+    int size = maxSize == 1 ? 1 : Integer.highestOneBit(maxSize - 1) << 1;
+    slots = new String[size];
+  }
+
+  /**
+   * Returns the shared instance of the characters of given string between
+   * given indices.
+   * 
+   * @param source
+   *          any string
+   * @param start
+   *          the start index, inclusive
+   * @param end
+   *          the end index, exclusive
+   * @return a string equal to {@code source.substring(start, end)}
+   */
+  public String intern(String source, int start, int end) {
+    if (start == 0 && end == source.length()) return source;
+    if (end - start > MAX_NAME_LENGTH) return source.substring(start, end);
+    return lookup(source, start, end);
+  }
+
+  /**
+   * Returns the shared instance of given name, such as a whole flattened key.
+   * Names longer than {@link #MAX_NAME_LENGTH} are returned as they are.
+   * 
+   * @param name
+   *          any string
+   * @return a string equal to given name
+   */
+  public String intern(String name) {
+    if (name.length() > MAX_NAME_LENGTH) return name;
+    return lookup(name, 0, name.length());
+  }
+
+  private String lookup(String source, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + source.charAt(i);
+    }
+    int slot = (hash ^ (hash >>> 16)) & (slots.length - 1);
+
+    // A racy read is safe since strings are immutable
+    String name = slots[slot];
+    if (name != null && name.length() == end - start
+        && source.regionMatches(start, name, 0, name.length())) {
+      hits.increment();
+      return name;
+    }
+
+    misses.increment();
+    name = end - start == source.length() ? source
+        : source.substring(start, end);
+    slots[slot] = name;
+    return name;
+  }
+
+  /**
+   * Returns the max number of cached names.
+   * 
+   * @return the max size
+   */
+  public int getMaxSize() {
+    return slots.length;
+  }
+
+  /**
+   * Counts the cached names by scanning all slots.
+   * 
+   * @return the number of cached names
+   */
+  public int size() {
+    int size = 0;
+    for (String name : slots) {
+      if (name != null) size++;
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of names which are found in this cache.
+   * 
+   * @return the number of hits
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Returns the number of names which are not found in this cache.
+   * 
+   * @return the number of misses
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Removes all cached names and resets the counters.
+   */
+  public void clear() {
+    Arrays.fill(slots, null);
+    hits.reset();
+    misses.reset();
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+
+/**
+ * 
+ * {@link FlattenedJsonKeyPredicate} builds the {@link QueryDslHelper}
+ * predicates of a single flattened key on a single path. The quoted forms of
+ * the key are computed once when it is created, so a
+ * {@link FlattenedJsonKeyPredicate} can be kept, ex: in a static field, and
+ * shared among threads to build predicates by values only. <br>
+ * <br>
+ * All values are passed as bind parameters.
+ *
+ * @param <T>
+ *          the type of the path
+ */
+public final class FlattenedJsonKeyPredicate<T> {
+
+  private final Expression<T> path;
+  private final String key;
+  private final String likePair;
+  private final String regexpPair;
+  private final String jsonPair;
+
+  FlattenedJsonKeyPredicate(Expression<T> path, String key) {
+    this.path = path;
+    this.key = key;
+    likePair = "%\"" + key + "\":";
+    regexpPair = QueryDslHelper.REGEXP_PAIR_PREFIX
+        + QueryDslHelper.quoteRegExSpecialChars(key)
+        + QueryDslHelper.REGEXP_PAIR_INFIX;
+    jsonPair = "{" + QueryDslHelper.jsonPair(key, "");
+  }
+
+  /**
+   * Returns the path of this predicate.
+   *
+   * @return the path
+   */
+  public Expression<T> getPath() {
+    return path;
+  }
+
+  /**
+   * Returns the flattened key of this predicate.
+   *
+   * @return the flattened key
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Same as {@link QueryDslHelper#flattenedJsonLikeParam(Expression, String,
+   * String)}.
+   *
+   * @param value
+   *          a JSON value, which may contain LIKE wildcards
+   * @return a {@link BooleanExpression}
+   */
+  public BooleanExpression like(String value) {
+    return QueryDslHelper.likeParamExpression(path, likePair + value, false);
+  }
+
+  /**
+   * Same as {@link QueryDslHelper#flattenedJsonLikeParam(Expression, String,
+   * String, boolean)}.
+   *
+   * @param value
+   *          a JSON value, which may contain LIKE wildcards
+   * @param ignoreCase
+   *          true if the case is ignored
+   * @return a {@link BooleanExpression}
+   */
+  public BooleanExpression like(String value, boolean ignoreCase) {
+    return QueryDslHelper.likeParamExpression(path, likePair + value,
+        ignoreCase);
+  }
+
+  /**
+   * Same as {@link QueryDslHelper#flattenedJsonMatches(Expression, String,
+   * String)}.
+   *
+   * @param valueRegex
+   *          a regex of the JSON value
+   * @return a {@link BooleanExpression}
+   */
+  public BooleanExpression matches(String valueRegex) {
+    return Expressions.booleanTemplate(QueryDslHelper.MATCHES_TEMPLATE, path,
+        regexp(valueRegex));
+  }
+
+  /**
+   * Same as {@link QueryDslHelper#flattenedJsonRegexpLike(Expression, String,
+   * String)}.
+   *
+   * @param valueRegex
+   *          a regex of the JSON value
+   * @return a {@link BooleanExpression}
+   */
+  public BooleanExpression regexpLike(String valueRegex) {
+    return Expressions.booleanTemplate(QueryDslHelper.REGEXP_LIKE_TEMPLATE,
+        path, regexp(valueRegex));
+  }
+
+  /**
+   * Same as {@link QueryDslHelper#flattenedJsonRegexpMatches(Expression,
+   * String, String)}.
+   *
+   * @param valueRegex
+   *          a regex of the JSON value
+   * @return a {@link BooleanExpression}
+   */
+  public BooleanExpression regexpMatches(String valueRegex) {
+    return Expressions.booleanTemplate(QueryDslHelper.REGEXP_MATCHES_TEMPLATE,
+        path, regexp(valueRegex));
+  }
+
+  /**
+   * Same as {@link QueryDslHelper#flattenedJsonSubstringMatches(Expression,
+   * String, String)}.
+   *
+   * @param valueRegex
+   *          a regex of the JSON value
+   * @return a {@link BooleanExpression}
+   */
+  public BooleanExpression substringMatches(String valueRegex) {
+    return Expressions.booleanTemplate(QueryDslHelper.SUBSTRING_TEMPLATE, path,
+        regexp(valueRegex));
+  }
+
+  /**
+   * Same as {@link QueryDslHelper#flattenedJsonContains(Expression, String,
+   * String)}.
+   *
+   * @param value
+   *          a JSON value
+   * @return a {@link BooleanExpression}
+   */
+  public BooleanExpression contains(String value) {
+    return QueryDslHelper.containsExpression(path, jsonPair + value + "}");
+  }
+
+  private String regexp(String valueRegex) {
+    return regexpPair + valueRegex + QueryDslHelper.REGEXP_PAIR_SUFFIX;
+  }
+
+}
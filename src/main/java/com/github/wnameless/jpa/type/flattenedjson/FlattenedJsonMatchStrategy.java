@@ -0,0 +1,56 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+/**
+ * 
+ * {@link FlattenedJsonMatchStrategy} tells
+ * {@link QueryDslHelper#flattenedJsonMatchesAll} and
+ * {@link QueryDslHelper#flattenedJsonMatchesAny} which SQL function is used to
+ * match all the key-value pairs within a single predicate. Pick the one which
+ * is supported by your database and its MetadataBuilderContributor.
+ *
+ */
+public enum FlattenedJsonMatchStrategy {
+
+  /**
+   * A combined regex matched by FLATTENED_JSON_MATCHES, which is the regex
+   * operator of any database.
+   */
+  MATCHES,
+
+  /**
+   * A combined regex matched by REGEXP_LIKE, ex: H2 and MySQL.
+   */
+  REGEXP_LIKE,
+
+  /**
+   * A combined regex matched by REGEXP_MATCHES, ex: HSQLDB.
+   */
+  REGEXP_MATCHES,
+
+  /**
+   * A combined regex matched by SUBSTRING, ex: PostgreSQL.
+   */
+  SUBSTRING,
+
+  /**
+   * A single JSON document matched by FLATTENED_JSON_CONTAINS, ex: PostgreSQL
+   * jsonb and MySQL JSON.
+   */
+  JSON_CONTAINS;
+
+}
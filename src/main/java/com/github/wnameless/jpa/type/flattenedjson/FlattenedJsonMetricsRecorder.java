@@ -0,0 +1,119 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+/**
+ * 
+ * {@link FlattenedJsonMetricsRecorder} receives the metrics of every flattening
+ * and unflattening done by the converters of this library, which can be
+ * bridged to any metrics library by implementing the methods of interest. <br>
+ * <br>
+ * Converters skip all measurements while {@link #NOOP} is set as the
+ * MetricsRecorder of {@link FlattenedJsonTypeConfigurer}, which is the
+ * default.
+ *
+ */
+public interface FlattenedJsonMetricsRecorder {
+
+  /**
+   * A {@link FlattenedJsonMetricsRecorder} which records nothing.
+   */
+  FlattenedJsonMetricsRecorder NOOP =
+      new FlattenedJsonMetricsRecorder() {};
+
+  /**
+   * Records a successful flattening.
+   * 
+   * @param converterClass
+   *          the class of the converter
+   * @param nanos
+   *          the elapsed time in nanoseconds
+   * @param flattenedLength
+   *          the length of the flattened JSON output
+   * @param keyCount
+   *          the number of flattened keys in the output
+   */
+  default void recordFlatten(Class<?> converterClass, long nanos,
+      int flattenedLength, int keyCount) {}
+
+  /**
+   * Records a successful unflattening.
+   * 
+   * @param converterClass
+   *          the class of the converter
+   * @param nanos
+   *          the elapsed time in nanoseconds
+   * @param flattenedLength
+   *          the length of the flattened JSON input
+   * @param keyCount
+   *          the number of flattened keys in the input
+   */
+  default void recordUnflatten(Class<?> converterClass, long nanos,
+      int flattenedLength, int keyCount) {}
+
+  /**
+   * Records a failed flattening.
+   * 
+   * @param converterClass
+   *          the class of the converter
+   * @param cause
+   *          the failure
+   */
+  default void recordFlattenFailure(Class<?> converterClass,
+      RuntimeException cause) {}
+
+  /**
+   * Records a failed unflattening.
+   * 
+   * @param converterClass
+   *          the class of the converter
+   * @param cause
+   *          the failure
+   */
+  default void recordUnflattenFailure(Class<?> converterClass,
+      RuntimeException cause) {}
+
+  /**
+   * Counts the keys of given flattened JSON string.
+   * 
+   * @param flattenedJson
+   *          a flattened JSON string
+   * @return the number of flattened keys
+   */
+  static int countKeys(String flattenedJson) {
+    if (flattenedJson == null || !flattenedJson.startsWith("{")) return 0;
+
+    // Values of flattened keys never contain any object member
+    int count = 0;
+    boolean inString = false;
+    for (int i = 1; i < flattenedJson.length(); i++) {
+      char c = flattenedJson.charAt(i);
+      if (inString) {
+        if (c == '\\') {
+          i++;
+        } else if (c == '"') {
+          inString = false;
+        }
+      } else if (c == '"') {
+        inString = true;
+      } else if (c == ':') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+}
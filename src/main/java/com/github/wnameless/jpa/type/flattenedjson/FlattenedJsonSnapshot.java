@@ -0,0 +1,97 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.io.Serializable;
+
+/**
+ *
+ * {@link FlattenedJsonSnapshot} is a compact fingerprint of a flattened JSON
+ * string, which consists of the length and a 64-bit FNV-1a hash of the
+ * string. It is used to tell whether a flattened JSON attribute is changed
+ * without keeping a copy of the attribute or its flattened JSON string.
+ *
+ */
+public final class FlattenedJsonSnapshot implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final long hash;
+  private final int length;
+
+  /**
+   * Creates a {@link FlattenedJsonSnapshot} of given flattened JSON string.
+   *
+   * @param flattenedJson
+   *          a flattened JSON string
+   * @return a {@link FlattenedJsonSnapshot}
+   */
+  public static FlattenedJsonSnapshot of(CharSequence flattenedJson) {
+    long hash = FNV_OFFSET_BASIS;
+    int length = flattenedJson.length();
+    for (int i = 0; i < length; i++) {
+      hash ^= flattenedJson.charAt(i);
+      hash *= FNV_PRIME;
+    }
+    return new FlattenedJsonSnapshot(hash, length);
+  }
+
+  private FlattenedJsonSnapshot(long hash, int length) {
+    this.hash = hash;
+    this.length = length;
+  }
+
+  /**
+   * Returns the 64-bit hash of the flattened JSON string.
+   *
+   * @return the 64-bit hash
+   */
+  public long getHash() {
+    return hash;
+  }
+
+  /**
+   * Returns the length of the flattened JSON string.
+   *
+   * @return the length
+   */
+  public int getLength() {
+    return length;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(hash) * 31 + length;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof FlattenedJsonSnapshot)) return false;
+    FlattenedJsonSnapshot other = (FlattenedJsonSnapshot) o;
+    return hash == other.hash && length == other.length;
+  }
+
+  @Override
+  public String toString() {
+    return "FlattenedJsonSnapshot{hash=" + Long.toHexString(hash) + ", length="
+        + length + "}";
+  }
+
+}
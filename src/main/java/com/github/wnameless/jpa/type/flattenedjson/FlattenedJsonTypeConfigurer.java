@@ -15,6 +15,9 @@
  */
 package com.github.wnameless.jpa.type.flattenedjson;
 
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -27,21 +30,26 @@ import com.github.wnameless.json.unflattener.JsonUnflattener;
  * {@link FlattenedJsonTypeConfigurer} provides options to configure the JPA
  * FlattenedJson type to the way user may want. <br>
  * <br>
- * Those options include JsonFlattenerCustomizer, JsonUnflattenerCustomizer and
- * ObjectMapperFactory.
+ * Those options include JsonFlattenerCustomizer, JsonUnflattenerCustomizer,
+ * ObjectMapperFactory, MetricsRecorder, CanonicalFlattening, HydrationExecutor
+ * and KeyCache. All of them are kept in an immutable snapshot together with a
+ * shared {@link com.fasterxml.jackson.databind.ObjectMapper ObjectMapper} and
+ * the checks of default flattening and unflattening. Any modification
+ * publishes a new snapshot as a whole, so other threads never see a
+ * half-applied configuration.
  *
  */
 public enum FlattenedJsonTypeConfigurer {
 
   INSTANCE;
 
-  private Function<JsonFlattener, JsonFlattener> jsonFlattenerCustomizer =
-      (jfc) -> jfc;
+  private static final String FLATTENER_PROBE =
+      "{\"a\":{\"b\":[1,2],\"c\":[{\"d\":\"\\\"/\\u00e9\\t\"}],"
+          + "\"e.f\":[],\"g\":{}},\"h\":1.50,\"i\":null,\"j\":true}";
 
-  private Function<JsonUnflattener, JsonUnflattener> jsonUnflattenerCustomizer =
-      (juc) -> juc;
-
-  private Supplier<ObjectMapper> objectMapperFactory = () -> new ObjectMapper();
+  private volatile Settings settings = new Settings((jfc) -> jfc,
+      (juc) -> juc, () -> new ObjectMapper(), FlattenedJsonMetricsRecorder.NOOP,
+      false, null, new FlattenedJsonKeyCache());
 
   /**
    * Creates a JsonFlattener of given input which is configured by
@@ -52,7 +60,7 @@ public enum FlattenedJsonTypeConfigurer {
    * @return a configured JsonFlattener
    */
   public JsonFlattener createFlattener(String json) {
-    return jsonFlattenerCustomizer.apply(new JsonFlattener(json));
+    return settings.jsonFlattenerCustomizer.apply(new JsonFlattener(json));
   }
 
   /**
@@ -64,7 +72,30 @@ public enum FlattenedJsonTypeConfigurer {
    * @return a configured JsonFlattener
    */
   public JsonUnflattener createUnflattener(String json) {
-    return jsonUnflattenerCustomizer.apply(new JsonUnflattener(json));
+    return settings.jsonUnflattenerCustomizer.apply(new JsonUnflattener(json));
+  }
+
+  /**
+   * Checks if the JsonFlattenerCustomizer keeps the default flattening of
+   * {@link com.github.wnameless.json.flattener.JsonFlattener JsonFlattener},
+   * which allows {@link StreamingJsonFlattener} to flatten objects on its own.
+   * 
+   * @return true if the flattening is not customized, false otherwise
+   */
+  public boolean isDefaultFlattening() {
+    return settings.defaultFlattening;
+  }
+
+  /**
+   * Checks if the JsonUnflattenerCustomizer keeps the default unflattening of
+   * {@link com.github.wnameless.json.unflattener.JsonUnflattener
+   * JsonUnflattener}, which allows {@link StreamingJsonUnflattener} to
+   * unflatten objects on its own.
+   * 
+   * @return true if the unflattening is not customized, false otherwise
+   */
+  public boolean isDefaultUnflattening() {
+    return settings.defaultUnflattening;
   }
 
   /**
@@ -76,16 +107,16 @@ public enum FlattenedJsonTypeConfigurer {
    *         JsonFlattener}
    */
   public Function<JsonFlattener, JsonFlattener> getJsonFlattenerCustomizer() {
-    return jsonFlattenerCustomizer;
+    return settings.jsonFlattenerCustomizer;
   }
 
   /**
    * Sets a {@link java.util.function.Function Function} to customize
    * {@link com.github.wnameless.json.flattener.JsonFlattener JsonFlattener}.
    */
-  public void setJsonFlattenerCustomizer(
+  public synchronized void setJsonFlattenerCustomizer(
       Function<JsonFlattener, JsonFlattener> jsonFlattenerCustomizer) {
-    this.jsonFlattenerCustomizer = jsonFlattenerCustomizer;
+    settings = settings.withJsonFlattenerCustomizer(jsonFlattenerCustomizer);
   }
 
   /**
@@ -98,7 +129,7 @@ public enum FlattenedJsonTypeConfigurer {
    *         JsonUnflattener}
    */
   public Function<JsonUnflattener, JsonUnflattener> getJsonUnflattenerCustomizer() {
-    return jsonUnflattenerCustomizer;
+    return settings.jsonUnflattenerCustomizer;
   }
 
   /**
@@ -106,9 +137,10 @@ public enum FlattenedJsonTypeConfigurer {
    * {@link com.github.wnameless.json.unflattener.JsonUnflattener
    * JsonUnflattener}.
    */
-  public void setJsonUnflattenerCustomizer(
+  public synchronized void setJsonUnflattenerCustomizer(
       Function<JsonUnflattener, JsonUnflattener> jsonUnflattenerCustomizer) {
-    this.jsonUnflattenerCustomizer = jsonUnflattenerCustomizer;
+    settings =
+        settings.withJsonUnflattenerCustomizer(jsonUnflattenerCustomizer);
   }
 
   /**
@@ -118,16 +150,224 @@ public enum FlattenedJsonTypeConfigurer {
    * @return a {@link com.fasterxml.jackson.databind.ObjectMapper ObjectMapper}
    */
   public Supplier<ObjectMapper> getObjectMapperFactory() {
-    return objectMapperFactory;
+    return settings.objectMapperFactory;
   }
 
   /**
    * Sets a {@link com.fasterxml.jackson.databind.ObjectMapper ObjectMapper} to
    * handle JSON serialization and deserialization in FlattenedJsonType.
    */
-  public void setObjectMapperFactory(
+  public synchronized void setObjectMapperFactory(
       Supplier<ObjectMapper> objectMapperFactory) {
-    this.objectMapperFactory = objectMapperFactory;
+    settings = settings.withObjectMapperFactory(objectMapperFactory);
+    ToFlattenedJsonConverter.clearConverterContexts();
+  }
+
+  /**
+   * Returns the shared {@link com.fasterxml.jackson.databind.ObjectMapper
+   * ObjectMapper} which is created by the ObjectMapperFactory only once and
+   * warmed up before being published.
+   * 
+   * @return a {@link com.fasterxml.jackson.databind.ObjectMapper ObjectMapper}
+   */
+  public ObjectMapper getObjectMapper() {
+    return settings.objectMapper;
+  }
+
+  /**
+   * Returns the {@link FlattenedJsonMetricsRecorder} which converters report
+   * to.
+   * 
+   * @return a {@link FlattenedJsonMetricsRecorder}
+   */
+  public FlattenedJsonMetricsRecorder getMetricsRecorder() {
+    return settings.metricsRecorder;
+  }
+
+  /**
+   * Sets a {@link FlattenedJsonMetricsRecorder} which converters report to.
+   * {@link FlattenedJsonMetricsRecorder#NOOP} turns the metrics off.
+   */
+  public synchronized void setMetricsRecorder(
+      FlattenedJsonMetricsRecorder metricsRecorder) {
+    settings =
+        settings.withMetricsRecorder(Objects.requireNonNull(metricsRecorder));
+  }
+
+  /**
+   * Checks if flattened JSON strings are written in the canonical form, which
+   * sorts the flattened keys in a deterministic order.
+   * 
+   * @return true if the canonical flattening is enabled, false otherwise
+   */
+  public boolean isCanonicalFlattening() {
+    return settings.canonicalFlattening;
+  }
+
+  /**
+   * Enables or disables the canonical flattening. The flattened keys are
+   * sorted by their characters, except array indices which are compared
+   * numerically, so identical documents always produce identical flattened
+   * JSON strings. The stored columns are kept as they are until being
+   * rewritten.
+   */
+  public synchronized void setCanonicalFlattening(boolean canonicalFlattening) {
+    settings = settings.withCanonicalFlattening(canonicalFlattening);
+  }
+
+  /**
+   * Returns the {@link java.util.concurrent.Executor Executor} which
+   * {@link LazyFlattenedJson#materializeAll(java.util.List, Function)}
+   * unflattens values on.
+   * 
+   * @return an {@link java.util.concurrent.Executor Executor} or null if the
+   *         values are unflattened on the calling thread
+   */
+  public Executor getHydrationExecutor() {
+    return settings.hydrationExecutor;
+  }
+
+  /**
+   * Sets an {@link java.util.concurrent.Executor Executor} which
+   * {@link LazyFlattenedJson#materializeAll(java.util.List, Function)}
+   * unflattens values on. The parallel hydration is disabled by default and
+   * null disables it again.
+   */
+  public synchronized void setHydrationExecutor(Executor hydrationExecutor) {
+    settings = settings.withHydrationExecutor(hydrationExecutor);
+  }
+
+  /**
+   * Returns the {@link FlattenedJsonKeyCache} which the names in flattened
+   * keys are shared through while unflattening.
+   * 
+   * @return a {@link FlattenedJsonKeyCache} or null if the names are not
+   *         cached
+   */
+  public FlattenedJsonKeyCache getKeyCache() {
+    return settings.keyCache;
+  }
+
+  /**
+   * Sets a {@link FlattenedJsonKeyCache} which the names in flattened keys are
+   * shared through while unflattening. A cache of
+   * {@link FlattenedJsonKeyCache#DEFAULT_MAX_SIZE} is used by default and null
+   * turns the cache off.
+   */
+  public synchronized void setKeyCache(FlattenedJsonKeyCache keyCache) {
+    settings = settings.withKeyCache(keyCache);
+  }
+
+  private static final class Settings {
+
+    private final Function<JsonFlattener, JsonFlattener> jsonFlattenerCustomizer;
+    private final Function<JsonUnflattener, JsonUnflattener> jsonUnflattenerCustomizer;
+    private final Supplier<ObjectMapper> objectMapperFactory;
+    private final ObjectMapper objectMapper;
+    private final FlattenedJsonMetricsRecorder metricsRecorder;
+    private final boolean defaultFlattening;
+    private final boolean defaultUnflattening;
+    private final boolean canonicalFlattening;
+    private final Executor hydrationExecutor;
+    private final FlattenedJsonKeyCache keyCache;
+
+    private Settings(
+        Function<JsonFlattener, JsonFlattener> jsonFlattenerCustomizer,
+        Function<JsonUnflattener, JsonUnflattener> jsonUnflattenerCustomizer,
+        Supplier<ObjectMapper> objectMapperFactory,
+        FlattenedJsonMetricsRecorder metricsRecorder,
+        boolean canonicalFlattening, Executor hydrationExecutor,
+        FlattenedJsonKeyCache keyCache) {
+      this(jsonFlattenerCustomizer, jsonUnflattenerCustomizer,
+          objectMapperFactory, warmUp(objectMapperFactory.get()),
+          metricsRecorder, canonicalFlattening, hydrationExecutor, keyCache);
+    }
+
+    // Keeps the shared ObjectMapper unless the ObjectMapperFactory is changed
+    private Settings(
+        Function<JsonFlattener, JsonFlattener> jsonFlattenerCustomizer,
+        Function<JsonUnflattener, JsonUnflattener> jsonUnflattenerCustomizer,
+        Supplier<ObjectMapper> objectMapperFactory, ObjectMapper objectMapper,
+        FlattenedJsonMetricsRecorder metricsRecorder,
+        boolean canonicalFlattening, Executor hydrationExecutor,
+        FlattenedJsonKeyCache keyCache) {
+      this.jsonFlattenerCustomizer = jsonFlattenerCustomizer;
+      this.jsonUnflattenerCustomizer = jsonUnflattenerCustomizer;
+      this.objectMapperFactory = objectMapperFactory;
+      this.objectMapper = objectMapper;
+      this.metricsRecorder = metricsRecorder;
+      this.canonicalFlattening = canonicalFlattening;
+      this.hydrationExecutor = hydrationExecutor;
+      this.keyCache = keyCache;
+
+      String flattened = new JsonFlattener(FLATTENER_PROBE).flatten();
+      defaultFlattening = flattened.equals(jsonFlattenerCustomizer
+          .apply(new JsonFlattener(FLATTENER_PROBE)).flatten());
+      defaultUnflattening = new JsonUnflattener(flattened).unflatten()
+          .equals(jsonUnflattenerCustomizer.apply(new JsonUnflattener(flattened))
+              .unflatten());
+    }
+
+    // Each copy replaces one option and keeps all the others, so the options
+    // are only passed by position in the copy methods below
+    private Settings withJsonFlattenerCustomizer(
+        Function<JsonFlattener, JsonFlattener> jsonFlattenerCustomizer) {
+      return new Settings(jsonFlattenerCustomizer, jsonUnflattenerCustomizer,
+          objectMapperFactory, objectMapper, metricsRecorder,
+          canonicalFlattening, hydrationExecutor, keyCache);
+    }
+
+    private Settings withJsonUnflattenerCustomizer(
+        Function<JsonUnflattener, JsonUnflattener> jsonUnflattenerCustomizer) {
+      return new Settings(jsonFlattenerCustomizer, jsonUnflattenerCustomizer,
+          objectMapperFactory, objectMapper, metricsRecorder,
+          canonicalFlattening, hydrationExecutor, keyCache);
+    }
+
+    // A new ObjectMapper is created and warmed up by the new factory
+    private Settings withObjectMapperFactory(
+        Supplier<ObjectMapper> objectMapperFactory) {
+      return new Settings(jsonFlattenerCustomizer, jsonUnflattenerCustomizer,
+          objectMapperFactory, metricsRecorder, canonicalFlattening,
+          hydrationExecutor, keyCache);
+    }
+
+    private Settings withMetricsRecorder(
+        FlattenedJsonMetricsRecorder metricsRecorder) {
+      return new Settings(jsonFlattenerCustomizer, jsonUnflattenerCustomizer,
+          objectMapperFactory, objectMapper, metricsRecorder,
+          canonicalFlattening, hydrationExecutor, keyCache);
+    }
+
+    private Settings withCanonicalFlattening(boolean canonicalFlattening) {
+      return new Settings(jsonFlattenerCustomizer, jsonUnflattenerCustomizer,
+          objectMapperFactory, objectMapper, metricsRecorder,
+          canonicalFlattening, hydrationExecutor, keyCache);
+    }
+
+    private Settings withHydrationExecutor(Executor hydrationExecutor) {
+      return new Settings(jsonFlattenerCustomizer, jsonUnflattenerCustomizer,
+          objectMapperFactory, objectMapper, metricsRecorder,
+          canonicalFlattening, hydrationExecutor, keyCache);
+    }
+
+    private Settings withKeyCache(FlattenedJsonKeyCache keyCache) {
+      return new Settings(jsonFlattenerCustomizer, jsonUnflattenerCustomizer,
+          objectMapperFactory, objectMapper, metricsRecorder,
+          canonicalFlattening, hydrationExecutor, keyCache);
+    }
+
+    // Fills the serializer and deserializer caches of JsonNode in advance
+    private static ObjectMapper warmUp(ObjectMapper objectMapper) {
+      try {
+        objectMapper
+            .writeValueAsString(objectMapper.readTree(FLATTENER_PROBE));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return objectMapper;
+    }
+
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,420 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ *
+ * {@link FlattenedJsonView} reads values of a flattened JSON string by their
+ * flattened keys without unflattening the whole document. <br>
+ * <br>
+ * The string is indexed on the first access, which records only the offsets
+ * of every value, and each value is decoded when it is read for the first
+ * time. Values are returned as {@link String}, {@link Number},
+ * {@link Boolean} or null, while nested JSON values, such as the empty
+ * <i>{}</i> and <i>[]</i>, are returned as {@link java.util.Map Map} and
+ * {@link java.util.List List}. The keys are shared through the KeyCache of
+ * {@link FlattenedJsonTypeConfigurer} across all views. <br>
+ * <br>
+ * Views can be shared across threads. A value decoded by several threads at
+ * once is published only once, so every thread gets the same instance.
+ *
+ */
+public final class FlattenedJsonView {
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private static final Object UNDECODED = new Object();
+
+  private final String flattenedJson;
+
+  private volatile Index index;
+
+  /**
+   * Creates a {@link FlattenedJsonView} of given flattened JSON string.
+   *
+   * @param flattenedJson
+   *          a flattened JSON string
+   * @return a {@link FlattenedJsonView}
+   */
+  public static FlattenedJsonView of(String flattenedJson) {
+    return new FlattenedJsonView(flattenedJson);
+  }
+
+  private FlattenedJsonView(String flattenedJson) {
+    this.flattenedJson = Objects.requireNonNull(flattenedJson);
+  }
+
+  /**
+   * Returns the flattened JSON string of this view.
+   *
+   * @return a flattened JSON string
+   */
+  public String getFlattenedJson() {
+    return flattenedJson;
+  }
+
+  /**
+   * Returns all flattened keys in the order of the flattened JSON string.
+   *
+   * @return a list of flattened keys
+   */
+  public List<String> keys() {
+    return Collections.unmodifiableList(Arrays.asList(getIndex().keys));
+  }
+
+  /**
+   * Returns the number of flattened keys.
+   *
+   * @return the number of flattened keys
+   */
+  public int size() {
+    return getIndex().keys.length;
+  }
+
+  /**
+   * Checks if given flattened key exists.
+   *
+   * @param key
+   *          a flattened key
+   * @return true if the key exists, false otherwise
+   */
+  public boolean containsKey(String key) {
+    return getIndex().positions.containsKey(key);
+  }
+
+  /**
+   * Returns the value of given flattened key.
+   *
+   * @param key
+   *          a flattened key
+   * @return the value or null if the key doesn't exist
+   */
+  public Object get(String key) {
+    Index idx = getIndex();
+    Integer i = idx.positions.get(key);
+    return i == null ? null : idx.value(i);
+  }
+
+  /**
+   * Returns the string value of given flattened key.
+   *
+   * @param key
+   *          a flattened key
+   * @return the string value or null if the key doesn't exist
+   * @throws IllegalArgumentException
+   *           if the value is not a string
+   */
+  public String getString(String key) {
+    return cast(key, String.class);
+  }
+
+  /**
+   * Returns the boolean value of given flattened key.
+   *
+   * @param key
+   *          a flattened key
+   * @return the boolean value or null if the key doesn't exist
+   * @throws IllegalArgumentException
+   *           if the value is not a boolean
+   */
+  public Boolean getBoolean(String key) {
+    return cast(key, Boolean.class);
+  }
+
+  /**
+   * Returns the numeric value of given flattened key.
+   *
+   * @param key
+   *          a flattened key
+   * @return the numeric value or null if the key doesn't exist
+   * @throws IllegalArgumentException
+   *           if the value is not a number
+   */
+  public Number getNumber(String key) {
+    return cast(key, Number.class);
+  }
+
+  /**
+   * Returns the numeric value of given flattened key as an Integer.
+   *
+   * @param key
+   *          a flattened key
+   * @return the Integer value or null if the key doesn't exist
+   * @throws IllegalArgumentException
+   *           if the value is not a number
+   */
+  public Integer getInteger(String key) {
+    Number number = getNumber(key);
+    return number == null ? null : number.intValue();
+  }
+
+  /**
+   * Returns the numeric value of given flattened key as a Long.
+   *
+   * @param key
+   *          a flattened key
+   * @return the Long value or null if the key doesn't exist
+   * @throws IllegalArgumentException
+   *           if the value is not a number
+   */
+  public Long getLong(String key) {
+    Number number = getNumber(key);
+    return number == null ? null : number.longValue();
+  }
+
+  /**
+   * Returns the numeric value of given flattened key as a Double.
+   *
+   * @param key
+   *          a flattened key
+   * @return the Double value or null if the key doesn't exist
+   * @throws IllegalArgumentException
+   *           if the value is not a number
+   */
+  public Double getDouble(String key) {
+    Number number = getNumber(key);
+    return number == null ? null : number.doubleValue();
+  }
+
+  /**
+   * Returns the numeric value of given flattened key as a BigDecimal.
+   *
+   * @param key
+   *          a flattened key
+   * @return the BigDecimal value or null if the key doesn't exist
+   * @throws IllegalArgumentException
+   *           if the value is not a number
+   */
+  public BigDecimal getBigDecimal(String key) {
+    Number number = getNumber(key);
+    if (number == null) return null;
+    if (number instanceof BigDecimal) return (BigDecimal) number;
+    if (number instanceof BigInteger) return new BigDecimal((BigInteger) number);
+    if (number instanceof Double) return new BigDecimal(number.toString());
+    return BigDecimal.valueOf(number.longValue());
+  }
+
+  /**
+   * Returns all flattened keys and values which match given key pattern, in
+   * the order of the flattened JSON string. A <i>[*]</i> in the pattern
+   * matches any array index, and the pattern matches any key which starts
+   * with it as a whole, ex: <i>words[*]</i> matches <i>words[0].abc</i> and
+   * <i>words[1]</i> but not <i>wordsX</i>.
+   *
+   * @param keyPattern
+   *          a flattened key with optional <i>[*]</i>
+   * @return an ordered map of matched keys and values
+   */
+  public Map<String, Object> scan(String keyPattern) {
+    Index idx = getIndex();
+    Map<String, Object> matches = new LinkedHashMap<>();
+    for (int i = 0; i < idx.keys.length; i++) {
+      if (matches(keyPattern, idx.keys[i])) {
+        matches.put(idx.keys[i], idx.value(i));
+      }
+    }
+    return matches;
+  }
+
+  private <T> T cast(String key, Class<T> type) {
+    Object value = get(key);
+    if (value == null || type.isInstance(value)) return type.cast(value);
+    throw new IllegalArgumentException("Value of key[" + key + "] is not a "
+        + type.getSimpleName() + ": " + value);
+  }
+
+  private Index getIndex() {
+    Index idx = index;
+    if (idx == null) {
+      synchronized (this) {
+        idx = index;
+        if (idx == null) {
+          try {
+            idx = new Index(flattenedJson);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          index = idx;
+        }
+      }
+    }
+    return idx;
+  }
+
+  private static boolean matches(String keyPattern, String key) {
+    int p = 0;
+    int k = 0;
+    while (p < keyPattern.length()) {
+      if (keyPattern.startsWith("[*]", p)) {
+        if (k >= key.length() || key.charAt(k) != '[') return false;
+        int digits = ++k;
+        while (k < key.length() && key.charAt(k) >= '0'
+            && key.charAt(k) <= '9') {
+          k++;
+        }
+        if (k == digits || k >= key.length() || key.charAt(k) != ']') {
+          return false;
+        }
+        k++;
+        p += 3;
+      } else {
+        if (k >= key.length() || key.charAt(k) != keyPattern.charAt(p)) {
+          return false;
+        }
+        k++;
+        p++;
+      }
+    }
+    return k == key.length() || key.charAt(k) == '.' || key.charAt(k) == '[';
+  }
+
+  private static final class Index {
+
+    private final String json;
+    private final String[] keys;
+    private final Map<String, Integer> positions;
+    private final int[] starts;
+    private final int[] ends;
+    private final JsonToken[] tokens;
+    private final AtomicReferenceArray<Object> values;
+
+    private Index(String json) throws IOException {
+      this.json = json;
+
+      int size = 0;
+      String[] keys = new String[16];
+      int[] starts = new int[16];
+      int[] ends = new int[16];
+      JsonToken[] tokens = new JsonToken[16];
+
+      FlattenedJsonKeyCache cache =
+          FlattenedJsonTypeConfigurer.INSTANCE.getKeyCache();
+      try (JsonParser parser = jsonFactory.createParser(json)) {
+        // Root values of a flattened JSON string have no key
+        if (parser.nextToken() == JsonToken.START_OBJECT) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            if (size == keys.length) {
+              keys = Arrays.copyOf(keys, size * 2);
+              starts = Arrays.copyOf(starts, size * 2);
+              ends = Arrays.copyOf(ends, size * 2);
+              tokens = Arrays.copyOf(tokens, size * 2);
+            }
+            keys[size] = cache == null ? parser.getCurrentName()
+                : cache.intern(parser.getCurrentName());
+            tokens[size] = parser.nextToken();
+            starts[size] = (int) parser.getTokenLocation().getCharOffset();
+            if (tokens[size].isStructStart()) {
+              parser.skipChildren();
+            } else {
+              parser.finishToken();
+            }
+            ends[size] = (int) parser.getCurrentLocation().getCharOffset();
+            size++;
+          }
+        }
+      }
+
+      this.keys = Arrays.copyOf(keys, size);
+      this.starts = starts;
+      this.ends = ends;
+      this.tokens = tokens;
+      positions = new HashMap<>(size * 4 / 3 + 1);
+      for (int i = 0; i < size; i++) {
+        positions.put(keys[i], i);
+      }
+      values = new AtomicReferenceArray<>(size);
+      for (int i = 0; i < size; i++) {
+        values.lazySet(i, UNDECODED);
+      }
+    }
+
+    private Object value(int i) {
+      Object value = values.get(i);
+      if (value == UNDECODED) {
+        try {
+          value = decode(tokens[i], starts[i], ends[i]);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        // Keeps the value published by another thread, if any
+        if (!values.compareAndSet(i, UNDECODED, value)) value = values.get(i);
+      }
+      return value;
+    }
+
+    private Object decode(JsonToken token, int start, int end)
+        throws IOException {
+      switch (token) {
+        case VALUE_NULL:
+          return null;
+        case VALUE_TRUE:
+          return Boolean.TRUE;
+        case VALUE_FALSE:
+          return Boolean.FALSE;
+        case VALUE_STRING:
+          if (!isEscaped(start, end)) {
+            return json.substring(start + 1, end - 1);
+          }
+          break;
+        case VALUE_NUMBER_INT:
+          if (end - start <= 18) {
+            long number = Long.parseLong(json.substring(start, end));
+            if (number == (int) number) return (int) number;
+            return number;
+          }
+          return new BigInteger(json.substring(start, end));
+        case VALUE_NUMBER_FLOAT:
+          return Double.valueOf(json.substring(start, end));
+        default:
+          break;
+      }
+
+      // Escaped strings and nested JSON values
+      try (JsonParser parser =
+          jsonFactory.createParser(json.substring(start, end))) {
+        parser.nextToken();
+        if (token == JsonToken.VALUE_STRING) return parser.getText();
+        return FlattenedJsonTypeConfigurer.INSTANCE.getObjectMapper()
+            .readValue(parser, Object.class);
+      }
+    }
+
+    private boolean isEscaped(int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (json.charAt(i) == '\\') return true;
+      }
+      return false;
+    }
+
+  }
+
+}
@@ -0,0 +1,514 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static com.github.wnameless.jpa.type.flattenedjson.StreamingJsonFlattener.CANONICAL_KEY_ORDER;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * 
+ * {@link ImmutableFlattenedJson} is an immutable flattened JSON value, which
+ * can be handed to caches and other threads without any defensive copy. <br>
+ * <br>
+ * The flattened JSON string is kept as it is loaded and only parsed on the
+ * first access into the flattened keys, in {@link
+ * StreamingJsonFlattener#CANONICAL_KEY_ORDER}, and the JSON texts of their
+ * values. {@link #with(String, Object)} and {@link #without(String)} return
+ * new values which reuse the unchanged key and value strings, but copy the
+ * arrays holding them, so each update costs O(n) in the number of keys; there
+ * is no structural sharing between the arrays of two values. An unchanged
+ * value is stored as the exact string it was loaded, and two values loaded
+ * from the same string are equal without being parsed.
+ *
+ */
+public final class ImmutableFlattenedJson implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private static final ImmutableFlattenedJson EMPTY =
+      new ImmutableFlattenedJson("{}",
+          new Entries(new String[0], new String[0]));
+
+  private volatile String flattenedJson;
+  private transient volatile Entries entries;
+  private transient volatile int hash;
+
+  /**
+   * Returns an empty {@link ImmutableFlattenedJson}.
+   * 
+   * @return an empty {@link ImmutableFlattenedJson}
+   */
+  public static ImmutableFlattenedJson empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Creates an {@link ImmutableFlattenedJson} of given flattened JSON string,
+   * which must be a JSON object. The string is not parsed until it is
+   * accessed.
+   * 
+   * @param flattenedJson
+   *          a flattened JSON string
+   * @return an {@link ImmutableFlattenedJson}
+   */
+  public static ImmutableFlattenedJson of(String flattenedJson) {
+    return new ImmutableFlattenedJson(Objects.requireNonNull(flattenedJson),
+        null);
+  }
+
+  /**
+   * Flattens given object into an {@link ImmutableFlattenedJson} by the
+   * shared {@link com.fasterxml.jackson.databind.ObjectMapper ObjectMapper}
+   * of {@link FlattenedJsonTypeConfigurer}.
+   * 
+   * @param value
+   *          any object which is serialized as a JSON object
+   * @return an {@link ImmutableFlattenedJson}
+   */
+  public static ImmutableFlattenedJson from(Object value) {
+    return of(new StreamingJsonFlattener(
+        FlattenedJsonTypeConfigurer.INSTANCE.getObjectMapper()).flatten(value));
+  }
+
+  private ImmutableFlattenedJson(String flattenedJson, Entries entries) {
+    this.flattenedJson = flattenedJson;
+    this.entries = entries;
+  }
+
+  /**
+   * Returns the number of flattened keys.
+   * 
+   * @return the number of flattened keys
+   */
+  public int size() {
+    return getEntries().keys.length;
+  }
+
+  /**
+   * Checks if there is no flattened key.
+   * 
+   * @return true if there is no flattened key, false otherwise
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Returns all flattened keys in
+   * {@link StreamingJsonFlattener#CANONICAL_KEY_ORDER}.
+   * 
+   * @return an unmodifiable list of flattened keys
+   */
+  public List<String> keys() {
+    return Collections.unmodifiableList(Arrays.asList(getEntries().keys));
+  }
+
+  /**
+   * Checks if given flattened key exists.
+   * 
+   * @param key
+   *          a flattened key
+   * @return true if the key exists, false otherwise
+   */
+  public boolean containsKey(String key) {
+    return getEntries().indexOf(key) >= 0;
+  }
+
+  /**
+   * Returns the JSON text of the value of given flattened key, ex:
+   * <i>1</i>, <i>"abc"</i> or <i>[]</i>.
+   * 
+   * @param key
+   *          a flattened key
+   * @return the JSON text or null if the key doesn't exist
+   */
+  public String getJson(String key) {
+    Entries e = getEntries();
+    int i = e.indexOf(key);
+    return i < 0 ? null : e.values[i];
+  }
+
+  /**
+   * Returns the value of given flattened key, which is a {@link String},
+   * {@link Number}, {@link Boolean}, null, or an empty
+   * {@link java.util.Map Map} or {@link java.util.List List}.
+   * 
+   * @param key
+   *          a flattened key
+   * @return the value or null if the key doesn't exist
+   */
+  public Object get(String key) {
+    String json = getJson(key);
+    if (json == null) return null;
+    try {
+      return FlattenedJsonTypeConfigurer.INSTANCE.getObjectMapper()
+          .readValue(json, Object.class);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns an {@link ImmutableFlattenedJson} with given flattened key set to
+   * given value. The keys are shared with this one if the key exists.
+   * 
+   * @param key
+   *          a flattened key
+   * @param value
+   *          a {@link String}, {@link Number}, {@link Boolean}, null, or an
+   *          empty {@link java.util.Map Map}, {@link java.util.Collection
+   *          Collection} or array
+   * @return an {@link ImmutableFlattenedJson}
+   * @throws IllegalArgumentException
+   *           if the value is not allowed in a flattened JSON
+   */
+  public ImmutableFlattenedJson with(String key, Object value) {
+    Objects.requireNonNull(key);
+    String json = toJson(value);
+    Entries e = getEntries();
+    int i = e.indexOf(key);
+
+    if (i >= 0) {
+      if (e.values[i].equals(json)) return this;
+      String[] values = e.values.clone();
+      values[i] = json;
+      return new ImmutableFlattenedJson(null, new Entries(e.keys, values));
+    }
+
+    i = -i - 1;
+    String[] keys = new String[e.keys.length + 1];
+    String[] values = new String[keys.length];
+    System.arraycopy(e.keys, 0, keys, 0, i);
+    System.arraycopy(e.values, 0, values, 0, i);
+    keys[i] = key;
+    values[i] = json;
+    System.arraycopy(e.keys, i, keys, i + 1, e.keys.length - i);
+    System.arraycopy(e.values, i, values, i + 1, e.values.length - i);
+    return new ImmutableFlattenedJson(null, new Entries(keys, values));
+  }
+
+  /**
+   * Returns an {@link ImmutableFlattenedJson} without given flattened key.
+   * 
+   * @param key
+   *          a flattened key
+   * @return an {@link ImmutableFlattenedJson}
+   */
+  public ImmutableFlattenedJson without(String key) {
+    Entries e = getEntries();
+    int i = e.indexOf(key);
+    if (i < 0) return this;
+
+    String[] keys = new String[e.keys.length - 1];
+    String[] values = new String[keys.length];
+    System.arraycopy(e.keys, 0, keys, 0, i);
+    System.arraycopy(e.values, 0, values, 0, i);
+    System.arraycopy(e.keys, i + 1, keys, i, keys.length - i);
+    System.arraycopy(e.values, i + 1, values, i, values.length - i);
+    return new ImmutableFlattenedJson(null, new Entries(keys, values));
+  }
+
+  /**
+   * Returns the flattened JSON string, which is the string this value is
+   * loaded from if it is never changed.
+   * 
+   * @return a flattened JSON string
+   */
+  public String getFlattenedJson() {
+    String json = flattenedJson;
+    if (json == null) {
+      json = getEntries().toFlattenedJson();
+      flattenedJson = json;
+    }
+    return json;
+  }
+
+  /**
+   * Returns a {@link FlattenedJsonView} of the flattened JSON string.
+   * 
+   * @return a {@link FlattenedJsonView}
+   */
+  public FlattenedJsonView view() {
+    return FlattenedJsonView.of(getFlattenedJson());
+  }
+
+  /**
+   * Computes the changes from this {@link ImmutableFlattenedJson} to given
+   * one.
+   * 
+   * @param target
+   *          the {@link ImmutableFlattenedJson} after changes
+   * @return a {@link FlattenedJsonDiff}
+   */
+  public FlattenedJsonDiff diff(ImmutableFlattenedJson target) {
+    Map<String, String> changes = new LinkedHashMap<>();
+    List<String> removals = new ArrayList<>();
+    String json = flattenedJson;
+    if (this == target
+        || (json != null && json.equals(target.flattenedJson))) {
+      return new FlattenedJsonDiff(changes, removals, target);
+    }
+
+    Entries source = getEntries();
+    Entries other = target.getEntries();
+    int i = 0;
+    int j = 0;
+    while (i < source.keys.length || j < other.keys.length) {
+      int c;
+      if (i == source.keys.length) {
+        c = 1;
+      } else if (j == other.keys.length) {
+        c = -1;
+      } else if (source.keys == other.keys) {
+        c = 0;
+      } else {
+        c = CANONICAL_KEY_ORDER.compare(source.keys[i], other.keys[j]);
+      }
+
+      if (c < 0) {
+        removals.add(source.keys[i++]);
+      } else if (c > 0) {
+        changes.put(other.keys[j], other.values[j]);
+        j++;
+      } else {
+        // Unchanged values are mostly shared by with()
+        if (source.values[i] != other.values[j]
+            && !source.values[i].equals(other.values[j])) {
+          changes.put(other.keys[j], other.values[j]);
+        }
+        i++;
+        j++;
+      }
+    }
+    return new FlattenedJsonDiff(changes, removals, target);
+  }
+
+  private Entries getEntries() {
+    Entries e = entries;
+    if (e == null) {
+      try {
+        e = Entries.parse(flattenedJson);
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+      entries = e;
+    }
+    return e;
+  }
+
+  private static String toJson(Object value) {
+    if (value instanceof Map) {
+      if (((Map<?, ?>) value).isEmpty()) return "{}";
+    } else if (value instanceof Collection) {
+      if (((Collection<?>) value).isEmpty()) return "[]";
+    } else if (value != null && value.getClass().isArray()) {
+      if (Array.getLength(value) == 0) return "[]";
+    } else if (value == null || value instanceof String
+        || value instanceof Number || value instanceof Boolean
+        || value instanceof Character) {
+      try {
+        return FlattenedJsonTypeConfigurer.INSTANCE.getObjectMapper()
+            .writeValueAsString(value);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    throw new IllegalArgumentException(
+        "Not a flattened JSON value: " + value);
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    getFlattenedJson();
+    out.defaultWriteObject();
+  }
+
+  private void readObject(ObjectInputStream in)
+      throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (flattenedJson == null) {
+      throw new InvalidObjectException("Missing flattened JSON");
+    }
+  }
+
+  /**
+   * Returns the hash code of the flattened keys and values, which is computed
+   * only once per value. Values loaded from strings in different key orders
+   * are equal, so a loaded value is parsed for its first hash code.
+   * 
+   * @return the hash code
+   */
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      h = getEntries().hashCode();
+      hash = h;
+    }
+    return h;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof ImmutableFlattenedJson)) return false;
+    ImmutableFlattenedJson other = (ImmutableFlattenedJson) o;
+    String json = flattenedJson;
+    if (json != null && json.equals(other.flattenedJson)) return true;
+    int h = hash;
+    int otherHash = other.hash;
+    if (h != 0 && otherHash != 0 && h != otherHash) return false;
+    return getEntries().equals(other.getEntries());
+  }
+
+  @Override
+  public String toString() {
+    return "ImmutableFlattenedJson{" + getFlattenedJson() + "}";
+  }
+
+  private static final class Entries {
+
+    private final String[] keys;
+    private final String[] values;
+    // Computed on demand, so with() and without() don't pay for it
+    private int hash;
+
+    private Entries(String[] keys, String[] values) {
+      this.keys = keys;
+      this.values = values;
+    }
+
+    static Entries parse(String json) throws IOException {
+      int size = 0;
+      String[] keys = new String[16];
+      String[] values = new String[16];
+      boolean sorted = true;
+
+      try (JsonParser parser = jsonFactory.createParser(json)) {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+          throw new IllegalArgumentException(
+              "Flattened JSON is not an object: " + json);
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+          }
+          keys[size] = parser.getCurrentName();
+          JsonToken token = parser.nextToken();
+          int start = (int) parser.getTokenLocation().getCharOffset();
+          if (token.isStructStart()) {
+            parser.skipChildren();
+          } else {
+            parser.finishToken();
+          }
+          values[size] = json.substring(start,
+              (int) parser.getCurrentLocation().getCharOffset());
+          if (size > 0 && CANONICAL_KEY_ORDER.compare(keys[size - 1],
+              keys[size]) >= 0) {
+            sorted = false;
+          }
+          size++;
+        }
+      }
+
+      if (sorted) {
+        return new Entries(Arrays.copyOf(keys, size),
+            Arrays.copyOf(values, size));
+      }
+
+      // Sorts the pairs by their keys and keeps the last of duplicated keys
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      String[] unsortedKeys = keys;
+      Arrays.sort(order, (a, b) -> {
+        int c = CANONICAL_KEY_ORDER.compare(unsortedKeys[a], unsortedKeys[b]);
+        return c != 0 ? c : Integer.compare(a, b);
+      });
+      String[] sortedKeys = new String[size];
+      String[] sortedValues = new String[size];
+      int n = 0;
+      for (int i = 0; i < size; i++) {
+        int j = order[i];
+        if (n > 0 && sortedKeys[n - 1].equals(keys[j])) n--;
+        sortedKeys[n] = keys[j];
+        sortedValues[n] = values[j];
+        n++;
+      }
+      return new Entries(Arrays.copyOf(sortedKeys, n),
+          Arrays.copyOf(sortedValues, n));
+    }
+
+    int indexOf(String key) {
+      return Arrays.binarySearch(keys, key, CANONICAL_KEY_ORDER);
+    }
+
+    String toFlattenedJson() {
+      StringBuilder sb = new StringBuilder(keys.length * 16 + 2);
+      JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+      sb.append('{');
+      for (int i = 0; i < keys.length; i++) {
+        if (i > 0) sb.append(',');
+        sb.append('"');
+        encoder.quoteAsString(keys[i], sb);
+        sb.append("\":").append(values[i]);
+      }
+      return sb.append('}').toString();
+    }
+
+    @Override
+    public int hashCode() {
+      int h = hash;
+      if (h == 0) {
+        h = 31 * Arrays.hashCode(keys) + Arrays.hashCode(values);
+        hash = h;
+      }
+      return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entries)) return false;
+      Entries other = (Entries) o;
+      return (keys == other.keys || Arrays.equals(keys, other.keys))
+          && Arrays.equals(values, other.values);
+    }
+
+  }
+
+}
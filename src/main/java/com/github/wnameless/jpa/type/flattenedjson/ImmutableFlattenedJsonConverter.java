@@ -0,0 +1,44 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * 
+ * {@link ImmutableFlattenedJsonConverter} is a
+ * {@link javax.persistence.Converter Converter} which converts attributes from
+ * {@link ImmutableFlattenedJson} to FlattenedJsonType. Columns are wrapped
+ * without being parsed and unchanged attributes are written back as the same
+ * strings, so neither conversion flattens nor unflattens anything.
+ *
+ */
+@Converter
+public class ImmutableFlattenedJsonConverter
+    implements AttributeConverter<ImmutableFlattenedJson, String> {
+
+  @Override
+  public String convertToDatabaseColumn(ImmutableFlattenedJson attribute) {
+    return attribute == null ? null : attribute.getFlattenedJson();
+  }
+
+  @Override
+  public ImmutableFlattenedJson convertToEntityAttribute(String dbData) {
+    return dbData == null ? null : ImmutableFlattenedJson.of(dbData);
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * 
+ * {@link LazyFlattenedJson} holds a flattened JSON string loaded from the
+ * database and unflattens it only when the value is accessed for the first
+ * time. A {@link LazyFlattenedJson} which is never accessed is written back as
+ * the original string without any flattening. <br>
+ * <br>
+ * Two {@link LazyFlattenedJson} are equal if their flattened JSON strings are
+ * equal, and the hash code is the one of the flattened JSON string. The
+ * loaded string is used before the value is accessed, otherwise the current
+ * value is flattened again, so neither {@link #equals(Object)} nor
+ * {@link #hashCode()} ever unflattens a value. <br>
+ * <br>
+ * The values of a large query result can be unflattened in parallel by
+ * {@link #materializeAll(List, Function, Executor)} once the result is
+ * fetched.
+ *
+ * @param <T>
+ *          any Type
+ * 
+ */
+public final class LazyFlattenedJson<T> {
+
+  private final String flattenedJson;
+  private final Function<String, T> unflattener;
+  private final Function<T, String> flattener;
+
+  private volatile boolean materialized;
+  private T value;
+
+  /**
+   * Creates a {@link LazyFlattenedJson} which holds given value.
+   * 
+   * @param <T>
+   *          the type of the value
+   * @param value
+   *          any object
+   * @return a {@link LazyFlattenedJson}
+   */
+  public static <T> LazyFlattenedJson<T> of(T value) {
+    LazyFlattenedJson<T> lazy = new LazyFlattenedJson<>(null, null,
+        new StreamingJsonFlattener(
+            FlattenedJsonTypeConfigurer.INSTANCE.getObjectMapper())::flatten);
+    lazy.value = value;
+    lazy.materialized = true;
+    return lazy;
+  }
+
+  /**
+   * Unflattens the {@link LazyFlattenedJson} attributes of given entities on
+   * the HydrationExecutor of {@link FlattenedJsonTypeConfigurer}, or on the
+   * calling thread if it is not set.
+   * 
+   * @param <E>
+   *          the type of entities
+   * @param entities
+   *          a list of entities
+   * @param attribute
+   *          a function to get the {@link LazyFlattenedJson} of an entity
+   * @return given entities
+   */
+  public static <E> List<E> materializeAll(List<E> entities,
+      Function<? super E, ? extends LazyFlattenedJson<?>> attribute) {
+    return materializeAll(entities, attribute,
+        FlattenedJsonTypeConfigurer.INSTANCE.getHydrationExecutor());
+  }
+
+  /**
+   * Unflattens the {@link LazyFlattenedJson} attributes of given entities on
+   * given {@link java.util.concurrent.Executor Executor}. The attributes are
+   * collected on the calling thread and only unflattened on the executor, in
+   * chunks, when there are at least
+   * {@link ToFlattenedJsonConverter#PARALLEL_BATCH_THRESHOLD} of them. The
+   * exception of the first failed attribute in the order of given entities is
+   * rethrown, just like unflattening them one by one.
+   * 
+   * @param <E>
+   *          the type of entities
+   * @param entities
+   *          a list of entities
+   * @param attribute
+   *          a function to get the {@link LazyFlattenedJson} of an entity
+   * @param executor
+   *          an {@link java.util.concurrent.Executor Executor} or null to
+   *          unflatten on the calling thread
+   * @return given entities
+   */
+  public static <E> List<E> materializeAll(List<E> entities,
+      Function<? super E, ? extends LazyFlattenedJson<?>> attribute,
+      Executor executor) {
+    List<LazyFlattenedJson<?>> lazies = new ArrayList<>(entities.size());
+    for (E entity : entities) {
+      LazyFlattenedJson<?> lazy = attribute.apply(entity);
+      if (lazy != null && !lazy.isMaterialized()) lazies.add(lazy);
+    }
+
+    if (executor == null
+        || lazies.size() < ToFlattenedJsonConverter.PARALLEL_BATCH_THRESHOLD) {
+      for (LazyFlattenedJson<?> lazy : lazies) {
+        lazy.get();
+      }
+      return entities;
+    }
+
+    int chunkSize = ToFlattenedJsonConverter.PARALLEL_BATCH_THRESHOLD / 2;
+    List<CompletableFuture<Void>> chunks = new ArrayList<>();
+    for (int from = 0; from < lazies.size(); from += chunkSize) {
+      List<LazyFlattenedJson<?>> chunk =
+          lazies.subList(from, Math.min(from + chunkSize, lazies.size()));
+      chunks.add(CompletableFuture.runAsync(() -> {
+        for (LazyFlattenedJson<?> lazy : chunk) {
+          lazy.get();
+        }
+      }, executor));
+    }
+
+    // Chunks are joined in order, so the earliest failure is rethrown
+    for (CompletableFuture<Void> chunk : chunks) {
+      try {
+        chunk.join();
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw e;
+      }
+    }
+    return entities;
+  }
+
+  LazyFlattenedJson(String flattenedJson, Function<String, T> unflattener,
+      Function<T, String> flattener) {
+    this.flattenedJson = flattenedJson;
+    this.unflattener = unflattener;
+    this.flattener = flattener;
+  }
+
+  /**
+   * Returns the value and unflattens it on the first call.
+   * 
+   * @return the value
+   */
+  public T get() {
+    if (!materialized) {
+      synchronized (this) {
+        if (!materialized) {
+          value = unflattener.apply(flattenedJson);
+          materialized = true;
+        }
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Checks if the value has been unflattened or is given directly.
+   * 
+   * @return true if the value is materialized, false otherwise
+   */
+  public boolean isMaterialized() {
+    return materialized;
+  }
+
+  /**
+   * Returns a {@link FlattenedJsonView} of the flattened JSON string. The
+   * loaded string is used as it is before the value is accessed, otherwise
+   * the current value is flattened.
+   * 
+   * @return a {@link FlattenedJsonView}
+   */
+  public FlattenedJsonView view() {
+    if (isMaterialized()) return FlattenedJsonView.of(flattener.apply(value));
+    return FlattenedJsonView.of(flattenedJson);
+  }
+
+  String getFlattenedJson() {
+    return flattenedJson;
+  }
+
+  // The loaded string as long as the value is not accessed
+  private String currentFlattenedJson() {
+    if (isMaterialized()) return flattener.apply(value);
+    return flattenedJson;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(currentFlattenedJson());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof LazyFlattenedJson)) return false;
+    LazyFlattenedJson<?> other = (LazyFlattenedJson<?>) o;
+    return Objects.equals(currentFlattenedJson(),
+        other.currentFlattenedJson());
+  }
+
+  @Override
+  public String toString() {
+    return "LazyFlattenedJson{"
+        + (isMaterialized() ? "value=" + value : "flattenedJson=" + flattenedJson)
+        + "}";
+  }
+
+}
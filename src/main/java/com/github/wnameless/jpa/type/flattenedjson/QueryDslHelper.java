@@ -15,13 +15,27 @@
  */
 package com.github.wnameless.jpa.type.flattenedjson;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
 
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexEntry;
 import com.querydsl.core.types.Expression;
 import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Template;
+import com.querydsl.core.types.TemplateFactory;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.core.types.dsl.PathBuilder;
+import com.querydsl.core.types.dsl.StringExpression;
+import com.querydsl.core.types.dsl.StringPath;
+import com.querydsl.jpa.JPAExpressions;
 
 /**
  * 
@@ -43,14 +57,48 @@ public class QueryDslHelper {
   public static String LIKE_PAIR_SUFFIX2 = "}'";
 
   private static final String regExSpecialChars = "<([{\\^-=$!|]})?*+.>";
-  private static final String regExSpecialCharsRE =
-      regExSpecialChars.replaceAll(".", "\\\\$0");
-  private static final Pattern reCharsREP =
-      Pattern.compile("[" + regExSpecialCharsRE + "]");
+
+  static final Template REGEXP_LIKE_TEMPLATE =
+      TemplateFactory.DEFAULT.create("regexp_like({0}, {1}) = 1");
+  static final Template REGEXP_MATCHES_TEMPLATE =
+      TemplateFactory.DEFAULT.create("regexp_matches({0}, {1}) = 1");
+  static final Template MATCHES_TEMPLATE =
+      TemplateFactory.DEFAULT.create("flattened_json_matches({0}, {1}) = 1");
+  static final Template SUBSTRING_TEMPLATE =
+      TemplateFactory.DEFAULT.create("substring({0}, {1}) IS NOT NULL");
+  static final Template NUMBER_TEMPLATE =
+      TemplateFactory.DEFAULT.create("flattened_json_number({0}, {1})");
+  static final Template CONTAINS_TEMPLATE =
+      TemplateFactory.DEFAULT.create("flattened_json_contains({0}, {1}) = 1");
+  // A converted attribute can't be compared with a String parameter
+  static final Template LIKE_PARAM_TEMPLATE =
+      TemplateFactory.DEFAULT.create("concat({0}, '') like {1}");
+  static final Template LIKE_PARAM_IC_TEMPLATE =
+      TemplateFactory.DEFAULT.create("lower(concat({0}, '')) like {1}");
+  // The parameter is passed through concat to keep the column indexable
+  static final Template STARTS_WITH_TEMPLATE = TemplateFactory.DEFAULT
+      .create("{0} like concat({1}, '') escape '!'");
 
   public static String quoteRegExSpecialChars(String s) {
-    Matcher m = reCharsREP.matcher(s);
-    return m.replaceAll("\\\\$0");
+    StringBuilder sb = null;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (regExSpecialChars.indexOf(c) >= 0) {
+        if (sb == null) {
+          sb = new StringBuilder(s.length() + 8);
+          sb.append(s, 0, i);
+        }
+        sb.append('\\');
+      }
+      if (sb != null) sb.append(c);
+    }
+    return sb == null ? s : sb.toString();
+  }
+
+  // Prepares the predicates of a key once, so only values are given per call
+  public static <T> FlattenedJsonKeyPredicate<T> flattenedJsonKey(
+      Expression<T> path, String key) {
+    return new FlattenedJsonKeyPredicate<>(path, key);
   }
 
   private QueryDslHelper() {}
@@ -88,11 +136,84 @@ public class QueryDslHelper {
             exp2));
   }
 
+  // Binds the LIKE patterns as query parameters instead of SQL literals, so
+  // the same SQL is reused for any key and value
+  public static <T> BooleanExpression flattenedJsonLikeParam(Expression<T> path,
+      String key, String value) {
+    return flattenedJsonLikeParam(path, key, value, false);
+  }
+
+  public static <T> BooleanExpression flattenedJsonLikeParam(Expression<T> path,
+      String key, String value, boolean ignoreCase) {
+    return likeParamExpression(path, "%\"" + key + "\":" + value, ignoreCase);
+  }
+
+  static <T> BooleanExpression likeParamExpression(Expression<T> path,
+      String pair, boolean ignoreCase) {
+    if (ignoreCase) {
+      pair = pair.toLowerCase();
+      return Expressions.booleanTemplate(LIKE_PARAM_IC_TEMPLATE, path,
+          pair + ",%")
+          .or(Expressions.booleanTemplate(LIKE_PARAM_IC_TEMPLATE, path,
+              pair + "}"));
+    }
+    return Expressions.booleanTemplate(LIKE_PARAM_TEMPLATE, path, pair + ",%")
+        .or(Expressions.booleanTemplate(LIKE_PARAM_TEMPLATE, path, pair + "}"));
+  }
+
+  // Matches the leading key-value pairs of canonical flattened JSON by LIKE
+  // patterns without a leading wildcard, so a prefix index can be used
+  public static <T> BooleanExpression flattenedJsonStartsWith(
+      Expression<T> path, String key, String value) {
+    return flattenedJsonStartsWith(path,
+        Collections.singletonMap(key, value));
+  }
+
+  public static <T> BooleanExpression flattenedJsonStartsWith(
+      Expression<T> path, Map<String, String> leadingKeyValues) {
+    checkKeyValues(leadingKeyValues);
+
+    List<String> keys = new ArrayList<>(leadingKeyValues.keySet());
+    keys.sort(StreamingJsonFlattener.CANONICAL_KEY_ORDER);
+    StringJoiner prefix = new StringJoiner(",", "{", "");
+    for (String key : keys) {
+      prefix.add(jsonPair(key, leadingKeyValues.get(key)));
+    }
+
+    String pattern = prefix.toString().replaceAll("[!%_]", "!$0");
+    return startsWithExpression(path, pattern + ",%")
+        .or(startsWithExpression(path, pattern + "}"));
+  }
+
+  private static <T> BooleanExpression startsWithExpression(Expression<T> path,
+      String pattern) {
+    return Expressions.booleanTemplate(STARTS_WITH_TEMPLATE, path, pattern);
+  }
+
+  // Implemented by SQL flattened_json_matches, which is mapped to the regex
+  // operator of each database
+  public static <T> BooleanExpression matches(Expression<T> path,
+      String regexp) {
+    return Expressions.booleanTemplate(MATCHES_TEMPLATE, path, regexp);
+  }
+
+  public static <T> BooleanExpression flattenedJsonMatches(Expression<T> path,
+      String key, String valueRegex) {
+    return flattenedJsonMatches(path, key, valueRegex, true);
+  }
+
+  public static <T> BooleanExpression flattenedJsonMatches(Expression<T> path,
+      String key, String valueRegex, boolean quoteKey) {
+    key = quoteKey ? quoteRegExSpecialChars(key) : key;
+    String regex = REGEXP_PAIR_PREFIX + key + REGEXP_PAIR_INFIX + valueRegex
+        + REGEXP_PAIR_SUFFIX;
+    return Expressions.booleanTemplate(MATCHES_TEMPLATE, path, regex);
+  }
+
   // Implemented by SQL regexp_like
   public static <T> BooleanExpression regexpLike(Expression<T> path,
       String regexp) {
-    return Expressions.booleanTemplate("regexp_like({0}, {1}) = 1", path,
-        regexp);
+    return Expressions.booleanTemplate(REGEXP_LIKE_TEMPLATE, path, regexp);
   }
 
   public static <T> BooleanExpression flattenedJsonRegexpLike(
@@ -105,15 +226,13 @@ public class QueryDslHelper {
     key = quoteKey ? quoteRegExSpecialChars(key) : key;
     String regex = REGEXP_PAIR_PREFIX + key + REGEXP_PAIR_INFIX + valueRegex
         + REGEXP_PAIR_SUFFIX;
-    return Expressions.booleanTemplate("regexp_like({0}, {1}) = 1", path,
-        regex);
+    return Expressions.booleanTemplate(REGEXP_LIKE_TEMPLATE, path, regex);
   }
 
   // Implemented by SQL regexp_matches
   public static <T> BooleanExpression regexpMatches(Expression<T> path,
       String regexp) {
-    return Expressions.booleanTemplate("regexp_matches({0}, {1}) = 1", path,
-        regexp);
+    return Expressions.booleanTemplate(REGEXP_MATCHES_TEMPLATE, path, regexp);
   }
 
   public static <T> BooleanExpression flattenedJsonRegexpMatches(
@@ -126,15 +245,13 @@ public class QueryDslHelper {
     key = quoteKey ? quoteRegExSpecialChars(key) : key;
     String regex = REGEXP_PAIR_PREFIX + key + REGEXP_PAIR_INFIX + valueRegex
         + REGEXP_PAIR_SUFFIX;
-    return Expressions.booleanTemplate("regexp_matches({0}, {1}) = 1", path,
-        regex);
+    return Expressions.booleanTemplate(REGEXP_MATCHES_TEMPLATE, path, regex);
   }
 
   // Implemented by SQL substring
   public static <T> BooleanExpression substringMatches(Expression<T> path,
       String regexp) {
-    return Expressions.booleanTemplate("substring({0}, {1}) IS NOT NULL", path,
-        regexp);
+    return Expressions.booleanTemplate(SUBSTRING_TEMPLATE, path, regexp);
   }
 
   public static <T> BooleanExpression flattenedJsonSubstringMatches(
@@ -147,8 +264,235 @@ public class QueryDslHelper {
     key = quoteKey ? quoteRegExSpecialChars(key) : key;
     String regex = REGEXP_PAIR_PREFIX + key + REGEXP_PAIR_INFIX + valueRegex
         + REGEXP_PAIR_SUFFIX;
-    return Expressions.booleanTemplate("substring({0}, {1}) IS NOT NULL", path,
+    return Expressions.booleanTemplate(SUBSTRING_TEMPLATE, path, regex);
+  }
+
+  // Implemented by SQL flattened_json_contains
+  public static <T> BooleanExpression flattenedJsonContains(Expression<T> path,
+      String key, String value) {
+    return containsExpression(path, "{" + jsonPair(key, value) + "}");
+  }
+
+  static <T> BooleanExpression containsExpression(Expression<T> path,
+      String json) {
+    return Expressions.booleanTemplate(CONTAINS_TEMPLATE, path, json);
+  }
+
+  static String jsonPair(String key, String value) {
+    return "\"" + new String(JsonStringEncoder.getInstance().quoteAsString(key))
+        + "\":" + value;
+  }
+
+  // Implemented by SQL flattened_json_value
+  public static <T> StringExpression flattenedJsonValue(Expression<T> path,
+      String key) {
+    return Expressions.stringTemplate("flattened_json_value({0}, {1})", path,
+        key);
+  }
+
+  // Implemented by SQL flattened_json_number, which is null if the value is
+  // missing or not a number
+  public static <T> NumberExpression<BigDecimal> flattenedJsonNumber(
+      Expression<T> path, String key) {
+    // Keys are stored JSON-escaped, ex: a"b.c is stored as a\"b.c
+    String jsonKey =
+        new String(JsonStringEncoder.getInstance().quoteAsString(key));
+    String regex = "(?<=[{,]\"" + quoteRegExSpecialChars(jsonKey)
+        + "\":)-?[0-9][0-9.eE+-]*";
+    return Expressions.numberTemplate(BigDecimal.class, NUMBER_TEMPLATE, path,
         regex);
   }
 
-}
\ No newline at end of file
+  public static <T> BooleanExpression flattenedJsonGreaterThan(
+      Expression<T> path, String key, Number value) {
+    return flattenedJsonNumber(path, key).gt(toBigDecimal(value));
+  }
+
+  public static <T> BooleanExpression flattenedJsonLessThan(Expression<T> path,
+      String key, Number value) {
+    return flattenedJsonNumber(path, key).lt(toBigDecimal(value));
+  }
+
+  public static <T> BooleanExpression flattenedJsonBetween(Expression<T> path,
+      String key, Number from, Number to) {
+    return flattenedJsonNumber(path, key).between(toBigDecimal(from),
+        toBigDecimal(to));
+  }
+
+  public static <T> BooleanExpression flattenedJsonIn(Expression<T> path,
+      String key, Number... values) {
+    BigDecimal[] decimals = new BigDecimal[values.length];
+    for (int i = 0; i < values.length; i++) {
+      decimals[i] = toBigDecimal(values[i]);
+    }
+    return flattenedJsonNumber(path, key).in(decimals);
+  }
+
+  private static BigDecimal toBigDecimal(Number number) {
+    if (number instanceof BigDecimal) return (BigDecimal) number;
+    return new BigDecimal(number.toString());
+  }
+
+  // Matches all pairs within a single predicate by REGEXP_LIKE
+  public static <T> BooleanExpression flattenedJsonMatchesAll(
+      Expression<T> path, Map<String, String> keyValues) {
+    return flattenedJsonMatchesAll(path, keyValues,
+        FlattenedJsonMatchStrategy.REGEXP_LIKE);
+  }
+
+  public static <T> BooleanExpression flattenedJsonMatchesAll(
+      Expression<T> path, Map<String, String> keyValues,
+      FlattenedJsonMatchStrategy strategy) {
+    checkKeyValues(keyValues);
+
+    if (strategy == FlattenedJsonMatchStrategy.JSON_CONTAINS) {
+      StringJoiner json = new StringJoiner(",", "{", "}");
+      keyValues.forEach((k, v) -> json.add(jsonPair(k, v)));
+      return containsExpression(path, json.toString());
+    }
+
+    // Each pair is a lookahead, so the column is matched by one regex
+    StringBuilder regex = new StringBuilder();
+    keyValues.forEach((k, v) -> regex.append("(?=").append(REGEXP_PAIR_PREFIX)
+        .append(regexPair(k, v)).append(REGEXP_PAIR_SUFFIX).append(")"));
+    regex.append(".*");
+    return regexExpression(path, regex.toString(), strategy);
+  }
+
+  // Matches any pair within a single predicate by REGEXP_LIKE
+  public static <T> BooleanExpression flattenedJsonMatchesAny(
+      Expression<T> path, Map<String, String> keyValues) {
+    return flattenedJsonMatchesAny(path, keyValues,
+        FlattenedJsonMatchStrategy.REGEXP_LIKE);
+  }
+
+  public static <T> BooleanExpression flattenedJsonMatchesAny(
+      Expression<T> path, Map<String, String> keyValues,
+      FlattenedJsonMatchStrategy strategy) {
+    checkKeyValues(keyValues);
+
+    if (strategy == FlattenedJsonMatchStrategy.JSON_CONTAINS) {
+      BooleanExpression exp = null;
+      for (Map.Entry<String, String> pair : keyValues.entrySet()) {
+        BooleanExpression contains = containsExpression(path,
+            "{" + jsonPair(pair.getKey(), pair.getValue()) + "}");
+        exp = exp == null ? contains : exp.or(contains);
+      }
+      return exp;
+    }
+
+    StringJoiner regex =
+        new StringJoiner("|", REGEXP_PAIR_PREFIX + "(", ")" + REGEXP_PAIR_SUFFIX);
+    keyValues.forEach((k, v) -> regex.add(regexPair(k, v)));
+    return regexExpression(path, regex.toString(), strategy);
+  }
+
+  private static void checkKeyValues(Map<String, String> keyValues) {
+    if (keyValues.isEmpty()) {
+      throw new IllegalArgumentException("Key-value pairs can't be empty");
+    }
+  }
+
+  private static String regexPair(String key, String value) {
+    return quoteRegExSpecialChars(key) + REGEXP_PAIR_INFIX
+        + quoteRegExSpecialChars(value);
+  }
+
+  private static <T> BooleanExpression regexExpression(Expression<T> path,
+      String regex, FlattenedJsonMatchStrategy strategy) {
+    switch (strategy) {
+      case MATCHES:
+        return matches(path, regex);
+      case REGEXP_MATCHES:
+        return regexpMatches(path, regex);
+      case SUBSTRING:
+        return substringMatches(path, regex);
+      default:
+        return regexpLike(path, regex);
+    }
+  }
+
+  // Implemented by an EXISTS subquery on FlattenedJsonIndexEntry. Keys longer
+  // than FlattenedJsonIndexEntry.MAX_KEY_LENGTH and values longer than
+  // FlattenedJsonIndexEntry.MAX_VALUE_LENGTH are looked up by their indexed
+  // prefixes and then compared with their full text. A null value matches the
+  // JSON null, which is indexed as a null value
+  public static BooleanExpression flattenedJsonIndexEq(Path<?> path,
+      Expression<?> idPath, String key, String value) {
+    PathBuilder<FlattenedJsonIndexEntry> entry = indexEntry();
+    StringPath fullValue = entry.getString("fullValue");
+    if (value == null) {
+      return indexExpression(entry, path, idPath, key,
+          entry.getString("value").isNull().and(fullValue.isNull()));
+    }
+
+    BooleanExpression valuePredicate = entry.getString("value")
+        .eq(FlattenedJsonIndexEntry.prefix(value,
+            FlattenedJsonIndexEntry.MAX_VALUE_LENGTH));
+    if (value.length() > FlattenedJsonIndexEntry.MAX_VALUE_LENGTH) {
+      valuePredicate =
+          valuePredicate.and(fullValue.like(escapeLike(value), '!'));
+    } else {
+      valuePredicate = valuePredicate.and(fullValue.isNull());
+    }
+    return indexExpression(entry, path, idPath, key, valuePredicate);
+  }
+
+  // Values longer than FlattenedJsonIndexEntry.MAX_VALUE_LENGTH are matched on
+  // their full text, which isn't covered by the lookup index
+  public static BooleanExpression flattenedJsonIndexLike(Path<?> path,
+      Expression<?> idPath, String key, String valuePattern) {
+    return flattenedJsonIndexLike(path, idPath, key, valuePattern, false);
+  }
+
+  public static BooleanExpression flattenedJsonIndexLike(Path<?> path,
+      Expression<?> idPath, String key, String valuePattern,
+      boolean ignoreCase) {
+    PathBuilder<FlattenedJsonIndexEntry> entry = indexEntry();
+    StringPath value = entry.getString("value");
+    StringPath fullValue = entry.getString("fullValue");
+    BooleanExpression valuePredicate = ignoreCase
+        ? value.likeIgnoreCase(valuePattern).and(fullValue.isNull())
+            .or(fullValue.likeIgnoreCase(valuePattern))
+        : value.like(valuePattern).and(fullValue.isNull())
+            .or(fullValue.like(valuePattern));
+    return indexExpression(entry, path, idPath, key, valuePredicate);
+  }
+
+  private static PathBuilder<FlattenedJsonIndexEntry> indexEntry() {
+    return new PathBuilder<>(FlattenedJsonIndexEntry.class,
+        "flattenedJsonIndexEntry");
+  }
+
+  private static BooleanExpression indexExpression(
+      PathBuilder<FlattenedJsonIndexEntry> entry, Path<?> path,
+      Expression<?> idPath, String key, BooleanExpression valuePredicate) {
+    StringPath fullKey = entry.getString("fullKey");
+    BooleanExpression keyPredicate = entry.getString("flatKey").eq(
+        FlattenedJsonIndexEntry.prefix(key,
+            FlattenedJsonIndexEntry.MAX_KEY_LENGTH));
+    if (key.length() > FlattenedJsonIndexEntry.MAX_KEY_LENGTH) {
+      keyPredicate = keyPredicate.and(fullKey.like(escapeLike(key), '!'));
+    } else {
+      keyPredicate = keyPredicate.and(fullKey.isNull());
+    }
+
+    // Entries of subclasses are stored under the name of their root entity
+    return JPAExpressions.selectOne().from(entry)
+        .where(
+            entry.getString("entityName").eq(FlattenedJsonIndexEntry
+                .entityNameOf(path.getRoot().getType())),
+            entry.getString("attributeName")
+                .eq(path.getMetadata().getName()),
+            keyPredicate, valuePredicate,
+            entry.getString("entityId")
+                .eq(Expressions.stringOperation(Ops.STRING_CAST, idPath)))
+        .exists();
+  }
+
+  // Full keys and values aren't comparable by = on every database
+  private static String escapeLike(String text) {
+    return text.replaceAll("[!%_]", "!$0");
+  }
+
+}
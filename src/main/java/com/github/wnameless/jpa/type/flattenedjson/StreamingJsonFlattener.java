@@ -0,0 +1,482 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonParser.NumberType;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ *
+ * {@link StreamingJsonFlattener} turns arbitrary objects into flattened JSON
+ * strings in a single pass. The object is serialized into a
+ * {@link com.fasterxml.jackson.databind.util.TokenBuffer TokenBuffer} by the
+ * given {@link com.fasterxml.jackson.databind.ObjectWriter ObjectWriter} and
+ * those tokens are written as flattened key-value pairs straight into a
+ * reusable output buffer, so no intermediate JSON string is ever built or
+ * parsed. <br>
+ * <br>
+ * The output is identical to the one produced by
+ * {@link com.github.wnameless.json.flattener.JsonFlattener JsonFlattener}.
+ * Whenever the JsonFlattenerCustomizer of {@link FlattenedJsonTypeConfigurer}
+ * alters the default flattening or a token can't be streamed, the
+ * JsonFlattener is used instead. <br>
+ * <br>
+ * If the CanonicalFlattening of {@link FlattenedJsonTypeConfigurer} is
+ * enabled, the flattened key-value pairs are sorted by
+ * {@link #CANONICAL_KEY_ORDER} afterward.
+ *
+ */
+public final class StreamingJsonFlattener {
+
+  /**
+   * The order of flattened keys in the canonical form. Keys are compared by
+   * their characters, except array indices which are compared numerically,
+   * ex: <i>a[2]</i> &lt; <i>a[10]</i> &lt; <i>a[10].b</i> &lt; <i>b</i>.
+   * Keys under the same object don't always stay next to each other, ex:
+   * <i>aZ</i> is ordered between <i>a.g</i> and <i>a["e.f"]</i>.
+   */
+  public static final Comparator<String> CANONICAL_KEY_ORDER =
+      StreamingJsonFlattener::compareKeys;
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 16;
+
+  private static final ThreadLocal<StringBuilder> outputBuffer =
+      ThreadLocal.withInitial(() -> new StringBuilder(1024));
+  private static final ThreadLocal<StringBuilder> keyBuffer =
+      ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+  private final ObjectWriter objectWriter;
+
+  /**
+   * Creates a {@link StreamingJsonFlattener} which serializes objects by the
+   * given {@link com.fasterxml.jackson.databind.ObjectMapper ObjectMapper}.
+   *
+   * @param objectMapper
+   *          an {@link com.fasterxml.jackson.databind.ObjectMapper
+   *          ObjectMapper}
+   */
+  public StreamingJsonFlattener(ObjectMapper objectMapper) {
+    this(objectMapper.writer());
+  }
+
+  /**
+   * Creates a {@link StreamingJsonFlattener} which serializes objects by the
+   * given {@link com.fasterxml.jackson.databind.ObjectWriter ObjectWriter}.
+   *
+   * @param objectWriter
+   *          an {@link com.fasterxml.jackson.databind.ObjectWriter
+   *          ObjectWriter}
+   */
+  public StreamingJsonFlattener(ObjectWriter objectWriter) {
+    this.objectWriter = objectWriter;
+  }
+
+  /**
+   * Flattens given object into a flattened JSON string.
+   *
+   * @param value
+   *          any object
+   * @return a flattened JSON string
+   */
+  public String flatten(Object value) {
+    return flatten(value, CharSequence::toString);
+  }
+
+  /**
+   * Takes a {@link FlattenedJsonSnapshot} of the flattened JSON string of
+   * given object. The flattened JSON string itself is not created unless the
+   * JsonFlattener is used.
+   *
+   * @param value
+   *          any object
+   * @return a {@link FlattenedJsonSnapshot}
+   */
+  public FlattenedJsonSnapshot snapshot(Object value) {
+    return flatten(value, FlattenedJsonSnapshot::of);
+  }
+
+  private <R> R flatten(Object value, Function<CharSequence, R> finisher) {
+    try {
+      if (isStreamable()) {
+        TokenBuffer tokens = new TokenBuffer(null, false);
+        objectWriter.writeValue(tokens, value);
+
+        R flattened = flatten(tokens, finisher);
+        if (flattened != null) return flattened;
+      }
+
+      return finisher.apply(finish(FlattenedJsonTypeConfigurer.INSTANCE
+          .createFlattener(objectWriter.writeValueAsString(value)).flatten()));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private boolean isStreamable() {
+    return FlattenedJsonTypeConfigurer.INSTANCE.isDefaultFlattening()
+        && !objectWriter.getFactory()
+            .isEnabled(JsonGenerator.Feature.WRITE_NUMBERS_AS_STRINGS)
+        && objectWriter.getFactory()
+            .isEnabled(JsonGenerator.Feature.QUOTE_NON_NUMERIC_NUMBERS);
+  }
+
+  private <R> R flatten(TokenBuffer tokens, Function<CharSequence, R> finisher)
+      throws IOException {
+    StringBuilder out = outputBuffer.get();
+    StringBuilder key = keyBuffer.get();
+    out.setLength(0);
+    key.setLength(0);
+
+    try (JsonParser parser = tokens.asParser()) {
+      if (!writeRoot(parser, out, key)) return null;
+      return finisher.apply(finish(out));
+    } finally {
+      if (out.capacity() > MAX_RETAINED_BUFFER_SIZE) outputBuffer.remove();
+      if (key.capacity() > MAX_RETAINED_BUFFER_SIZE) keyBuffer.remove();
+    }
+  }
+
+  private static CharSequence finish(CharSequence flattenedJson)
+      throws IOException {
+    if (!FlattenedJsonTypeConfigurer.INSTANCE.isCanonicalFlattening()) {
+      return flattenedJson;
+    }
+    return canonicalize(flattenedJson);
+  }
+
+  // Sorts the key-value pairs of a flattened JSON object without touching
+  // their text
+  static CharSequence canonicalize(CharSequence flattenedJson)
+      throws IOException {
+    String json = flattenedJson.toString();
+    List<String> keys = new ArrayList<>();
+    List<String> pairs = new ArrayList<>();
+    boolean sorted = true;
+
+    try (JsonParser parser = jsonFactory.createParser(json)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) return flattenedJson;
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        int start = (int) parser.getTokenLocation().getCharOffset();
+        String key = parser.getCurrentName();
+        if (parser.nextToken().isStructStart()) {
+          parser.skipChildren();
+        } else {
+          parser.finishToken();
+        }
+        int end = (int) parser.getCurrentLocation().getCharOffset();
+
+        if (sorted && !keys.isEmpty()
+            && compareKeys(keys.get(keys.size() - 1), key) > 0) {
+          sorted = false;
+        }
+        keys.add(key);
+        pairs.add(json.substring(start, end));
+      }
+    }
+    if (sorted) return flattenedJson;
+
+    Integer[] order = new Integer[keys.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> compareKeys(keys.get(a), keys.get(b)));
+
+    StringBuilder sb = new StringBuilder(json.length());
+    sb.append('{');
+    for (Integer i : order) {
+      sb.append(pairs.get(i)).append(',');
+    }
+    sb.setCharAt(sb.length() - 1, '}');
+    return sb;
+  }
+
+  private static int compareKeys(String a, String b) {
+    int i = 0;
+    int length = Math.min(a.length(), b.length());
+    while (i < length) {
+      char ca = a.charAt(i);
+      char cb = b.charAt(i);
+      if (i > 0 && a.charAt(i - 1) == '[' && isDigit(ca) && isDigit(cb)) {
+        int endA = digitsEnd(a, i);
+        int endB = digitsEnd(b, i);
+        if (endA != endB) return endA - endB;
+        for (; i < endA; i++) {
+          if (a.charAt(i) != b.charAt(i)) return a.charAt(i) - b.charAt(i);
+        }
+        continue;
+      }
+      if (ca != cb) return ca - cb;
+      i++;
+    }
+    return a.length() - b.length();
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int digitsEnd(String s, int start) {
+    int end = start;
+    while (end < s.length() && isDigit(s.charAt(end))) {
+      end++;
+    }
+    return end;
+  }
+
+  private boolean writeRoot(JsonParser parser, StringBuilder out,
+      StringBuilder key) throws IOException {
+    JsonToken token = parser.nextToken();
+    if (token == JsonToken.START_OBJECT) {
+      token = parser.nextToken();
+      if (token == JsonToken.END_OBJECT) {
+        out.append("{}");
+        return true;
+      }
+      out.append('{');
+      if (!writeFields(parser, token, out, key)) return false;
+    } else if (token == JsonToken.START_ARRAY) {
+      token = parser.nextToken();
+      if (token == JsonToken.END_ARRAY) {
+        out.append("[]");
+        return true;
+      }
+      out.append('{');
+      if (!writeElements(parser, token, out, key)) return false;
+    } else {
+      return writeRootScalar(parser, token, out);
+    }
+
+    out.setCharAt(out.length() - 1, '}');
+    return true;
+  }
+
+  private boolean writeValue(JsonParser parser, JsonToken token,
+      StringBuilder out, StringBuilder key) throws IOException {
+    switch (token) {
+      case START_OBJECT:
+        token = parser.nextToken();
+        if (token == JsonToken.END_OBJECT) {
+          writeKey(out, key).append("{},");
+          return true;
+        }
+        return writeFields(parser, token, out, key);
+      case START_ARRAY:
+        token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+          writeKey(out, key).append("[],");
+          return true;
+        }
+        return writeElements(parser, token, out, key);
+      default:
+        writeKey(out, key);
+        if (!writeScalar(parser, token, out)) return false;
+        out.append(',');
+        return true;
+    }
+  }
+
+  private boolean writeFields(JsonParser parser, JsonToken token,
+      StringBuilder out, StringBuilder key) throws IOException {
+    while (token == JsonToken.FIELD_NAME) {
+      int mark = key.length();
+      if (!appendFieldName(key, parser.getCurrentName())) return false;
+      if (!writeValue(parser, parser.nextToken(), out, key)) return false;
+      key.setLength(mark);
+      token = parser.nextToken();
+    }
+    return token == JsonToken.END_OBJECT;
+  }
+
+  private boolean writeElements(JsonParser parser, JsonToken token,
+      StringBuilder out, StringBuilder key) throws IOException {
+    int index = 0;
+    while (token != null && token != JsonToken.END_ARRAY) {
+      int mark = key.length();
+      key.append('[').append(index++).append(']');
+      if (!writeValue(parser, token, out, key)) return false;
+      key.setLength(mark);
+      token = parser.nextToken();
+    }
+    return token == JsonToken.END_ARRAY;
+  }
+
+  private StringBuilder writeKey(StringBuilder out, StringBuilder key) {
+    return out.append('"').append(key).append("\":");
+  }
+
+  private boolean appendFieldName(StringBuilder key, String name) {
+    // An empty name at the beginning of a key leads to colliding keys which
+    // are merged by JsonFlattener
+    if (name.isEmpty() && key.length() == 0) return false;
+
+    if (hasReservedCharacters(name)) {
+      key.append("[\\\"");
+      if (!appendEscaped(key, name)) return false;
+      key.append("\\\"]");
+      return true;
+    }
+
+    if (key.length() != 0) key.append('.');
+    return appendEscaped(key, name);
+  }
+
+  private boolean writeScalar(JsonParser parser, JsonToken token,
+      StringBuilder out) throws IOException {
+    switch (token) {
+      case VALUE_STRING:
+        return appendQuoted(out, parser.getText());
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        String number = numberText(parser);
+        if (isNonNumeric(number)) return appendQuoted(out, number);
+        if (isFloatingPoint(number)) {
+          String decimal = toDecimal(number);
+          out.append(isFloatingPoint(decimal)
+              ? Double.toString(Double.parseDouble(decimal)) : decimal);
+        } else {
+          out.append(number);
+        }
+        return true;
+      case VALUE_TRUE:
+        out.append("true");
+        return true;
+      case VALUE_FALSE:
+        out.append("false");
+        return true;
+      case VALUE_NULL:
+        out.append("null");
+        return true;
+      case VALUE_EMBEDDED_OBJECT:
+        Object embedded = parser.getEmbeddedObject();
+        if (embedded instanceof byte[]) {
+          return appendQuoted(out, objectWriter.getConfig()
+              .getBase64Variant().encode((byte[]) embedded));
+        }
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  private boolean writeRootScalar(JsonParser parser, JsonToken token,
+      StringBuilder out) throws IOException {
+    if (token == JsonToken.VALUE_NUMBER_INT
+        || token == JsonToken.VALUE_NUMBER_FLOAT) {
+      String number = numberText(parser);
+      if (isNonNumeric(number)) return appendQuoted(out, number);
+      out.append(isFloatingPoint(number) ? toDecimal(number) : number);
+      return true;
+    }
+    return writeScalar(parser, token, out);
+  }
+
+  private String numberText(JsonParser parser) throws IOException {
+    if (parser.getNumberType() == NumberType.BIG_DECIMAL && objectWriter
+        .getFactory().isEnabled(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN)) {
+      return parser.getDecimalValue().toPlainString();
+    }
+    return parser.getText();
+  }
+
+  // JsonFlattener reads floating point numbers as doubles and keeps them as
+  // BigDecimals afterward
+  private static String toDecimal(String number) {
+    return new BigDecimal(Double.toString(Double.parseDouble(number)))
+        .toString();
+  }
+
+  private static boolean isNonNumeric(String number) {
+    return "NaN".equals(number) || "Infinity".equals(number)
+        || "-Infinity".equals(number);
+  }
+
+  private static boolean isFloatingPoint(String number) {
+    for (int i = 0; i < number.length(); i++) {
+      char c = number.charAt(i);
+      if (c == '.' || c == 'e' || c == 'E') return true;
+    }
+    return false;
+  }
+
+  private static boolean hasReservedCharacters(String name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '.' || c == '[' || c == ']') return true;
+    }
+    return false;
+  }
+
+  private static boolean appendQuoted(StringBuilder out, String s) {
+    out.append('"');
+    if (!appendEscaped(out, s)) return false;
+    out.append('"');
+    return true;
+  }
+
+  // Mirrors StringEscapePolicy.DEFAULT, any other control character is
+  // rejected by JsonFlattener, so it is left to JsonFlattener as well
+  private static boolean appendEscaped(StringBuilder out, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\b':
+          out.append("\\b");
+          break;
+        case '\f':
+          out.append("\\f");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) return false;
+          out.append(c);
+      }
+    }
+    return true;
+  }
+
+}
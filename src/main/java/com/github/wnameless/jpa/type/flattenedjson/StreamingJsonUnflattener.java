@@ -0,0 +1,389 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ *
+ * {@link StreamingJsonUnflattener} turns flattened JSON strings back into
+ * objects of arbitrary type in a single pass. The flattened key-value pairs
+ * are tokenized once and replayed as the tokens of the nested JSON through a
+ * {@link com.fasterxml.jackson.databind.util.TokenBuffer TokenBuffer}, which
+ * is deserialized by the given
+ * {@link com.fasterxml.jackson.databind.ObjectReader ObjectReader} right away.
+ * <br>
+ * <br>
+ * The result is the same as unflattening the string by
+ * {@link com.github.wnameless.json.unflattener.JsonUnflattener
+ * JsonUnflattener} and then reading the nested JSON. Whenever the
+ * JsonUnflattenerCustomizer of {@link FlattenedJsonTypeConfigurer} alters the
+ * default unflattening or the flattened keys are not laid out the way
+ * {@link StreamingJsonFlattener} writes them, the JsonUnflattener is used
+ * instead. Unlike JsonUnflattener, a quoted name containing <i>"]</i> is not
+ * split at its first <i>"]</i>, so such keys are unflattened back into the
+ * original names. <br>
+ * <br>
+ * The names in flattened keys are shared through the KeyCache of
+ * {@link FlattenedJsonTypeConfigurer} across all unflattened objects.
+ *
+ */
+public final class StreamingJsonUnflattener {
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private static final int MAX_INDEX_DIGITS = 9;
+
+  private final ObjectReader objectReader;
+
+  /**
+   * Creates a {@link StreamingJsonUnflattener} which deserializes objects by
+   * the given {@link com.fasterxml.jackson.databind.ObjectMapper
+   * ObjectMapper}.
+   *
+   * @param objectMapper
+   *          an {@link com.fasterxml.jackson.databind.ObjectMapper
+   *          ObjectMapper}
+   */
+  public StreamingJsonUnflattener(ObjectMapper objectMapper) {
+    this(objectMapper.reader());
+  }
+
+  /**
+   * Creates a {@link StreamingJsonUnflattener} which deserializes objects by
+   * the given {@link com.fasterxml.jackson.databind.ObjectReader
+   * ObjectReader}.
+   *
+   * @param objectReader
+   *          an {@link com.fasterxml.jackson.databind.ObjectReader
+   *          ObjectReader}
+   */
+  public StreamingJsonUnflattener(ObjectReader objectReader) {
+    this.objectReader = objectReader;
+  }
+
+  /**
+   * Unflattens given flattened JSON string into an object of given type.
+   *
+   * @param <T>
+   *          the type of the result
+   * @param flattenedJson
+   *          a flattened JSON string
+   * @param valueTypeRef
+   *          a {@link com.fasterxml.jackson.core.type.TypeReference
+   *          TypeReference} of the result
+   * @return an object of given type
+   */
+  public <T> T unflatten(String flattenedJson, TypeReference<T> valueTypeRef) {
+    return unflatten(objectReader.forType(valueTypeRef), flattenedJson);
+  }
+
+  /**
+   * Unflattens given flattened JSON string into an object of the value type
+   * of the {@link com.fasterxml.jackson.databind.ObjectReader ObjectReader}.
+   *
+   * @param <T>
+   *          the type of the result
+   * @param flattenedJson
+   *          a flattened JSON string
+   * @return an object of the value type of the ObjectReader
+   */
+  public <T> T unflatten(String flattenedJson) {
+    return unflatten(objectReader, flattenedJson);
+  }
+
+  private <T> T unflatten(ObjectReader reader, String flattenedJson) {
+    try {
+      TokenBuffer tokens = null;
+      if (flattenedJson != null && FlattenedJsonTypeConfigurer.INSTANCE
+          .isDefaultUnflattening()) {
+        tokens = tokenize(flattenedJson);
+      }
+
+      if (tokens == null) {
+        return reader.readValue(FlattenedJsonTypeConfigurer.INSTANCE
+            .createUnflattener(flattenedJson).unflatten());
+      }
+
+      try (JsonParser parser = tokens.asParser()) {
+        return reader.readValue(parser);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private TokenBuffer tokenize(String flattenedJson) throws IOException {
+    TokenBuffer tokens = new TokenBuffer(null, false);
+
+    try (JsonParser parser = jsonFactory.createParser(flattenedJson)) {
+      JsonToken token = parser.nextToken();
+      if (token == null) return null;
+
+      if (token != JsonToken.START_OBJECT) {
+        if (token == JsonToken.START_ARRAY) {
+          if (parser.nextToken() != JsonToken.END_ARRAY) return null;
+          tokens.writeStartArray();
+          tokens.writeEndArray();
+        } else {
+          tokens.copyCurrentEvent(parser);
+        }
+        return parser.nextToken() == null ? tokens : null;
+      }
+
+      List<Container> containers = new ArrayList<>();
+      KeyReader key =
+          new KeyReader(FlattenedJsonTypeConfigurer.INSTANCE.getKeyCache());
+      while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+        key.reset(parser.getCurrentName());
+        if (!writePair(parser, key, containers, tokens)) return null;
+      }
+      if (token != JsonToken.END_OBJECT || parser.nextToken() != null) {
+        return null;
+      }
+
+      if (containers.isEmpty()) {
+        tokens.writeStartObject();
+        tokens.writeEndObject();
+      }
+      for (int i = containers.size() - 1; i >= 0; i--) {
+        containers.get(i).writeEnd(tokens);
+      }
+    }
+
+    return tokens;
+  }
+
+  private boolean writePair(JsonParser parser, KeyReader key,
+      List<Container> containers, TokenBuffer tokens) throws IOException {
+    if (!key.next()) return false;
+    if (containers.isEmpty()) {
+      containers.add(Container.of(key.isIndex(), null, -1, tokens));
+    }
+
+    // Skips the containers which are shared with the previous key
+    int depth = 1;
+    while (depth < containers.size() && containers.get(depth).isAt(key)) {
+      if (!key.next()) return false;
+      depth++;
+    }
+    while (containers.size() > depth) {
+      containers.remove(containers.size() - 1).writeEnd(tokens);
+    }
+
+    while (true) {
+      Container parent = containers.get(containers.size() - 1);
+      String name = key.isIndex() ? null : key.name();
+      int index = key.isIndex() ? key.index() : -1;
+      if (!parent.writeMember(name, index, tokens)) return false;
+
+      if (!key.hasNext()) break;
+      if (!key.next()) return false;
+      containers.add(Container.of(key.isIndex(), name, index, tokens));
+    }
+
+    return writeValue(parser, tokens);
+  }
+
+  private boolean writeValue(JsonParser parser, TokenBuffer tokens)
+      throws IOException {
+    JsonToken token = parser.nextToken();
+    if (token == JsonToken.START_OBJECT) {
+      if (parser.nextToken() != JsonToken.END_OBJECT) return false;
+      tokens.writeStartObject();
+      tokens.writeEndObject();
+    } else if (token == JsonToken.START_ARRAY) {
+      if (parser.nextToken() != JsonToken.END_ARRAY) return false;
+      tokens.writeStartArray();
+      tokens.writeEndArray();
+    } else {
+      tokens.copyCurrentEvent(parser);
+    }
+    return true;
+  }
+
+  private static final class Container {
+
+    private final String name;
+    private final int index;
+    private final Set<String> memberNames;
+    private int size;
+
+    private Container(String name, int index, Set<String> memberNames) {
+      this.name = name;
+      this.index = index;
+      this.memberNames = memberNames;
+    }
+
+    static Container of(boolean isArray, String name, int index,
+        TokenBuffer tokens) throws IOException {
+      if (isArray) {
+        tokens.writeStartArray();
+        return new Container(name, index, null);
+      } else {
+        tokens.writeStartObject();
+        return new Container(name, index, new HashSet<>());
+      }
+    }
+
+    boolean isAt(KeyReader key) {
+      if (name == null) return key.isIndex() && key.index() == index;
+      return !key.isIndex() && key.nameEquals(name);
+    }
+
+    // Members which are not written in order can't be streamed
+    boolean writeMember(String memberName, int memberIndex,
+        TokenBuffer tokens) throws IOException {
+      if (memberNames == null) {
+        if (memberName != null || memberIndex < size) return false;
+        for (; size < memberIndex; size++) {
+          tokens.writeNull();
+        }
+        size++;
+      } else {
+        if (memberName == null || !memberNames.add(memberName)) return false;
+        tokens.writeFieldName(memberName);
+      }
+      return true;
+    }
+
+    void writeEnd(TokenBuffer tokens) throws IOException {
+      if (memberNames == null) {
+        tokens.writeEndArray();
+      } else {
+        tokens.writeEndObject();
+      }
+    }
+
+  }
+
+  // Reads the parts of a flattened key, such as a.b[0]["c.d"]
+  private static final class KeyReader {
+
+    private final FlattenedJsonKeyCache cache;
+    private String key;
+    private int position;
+    private int start;
+    private int end;
+    private boolean isIndex;
+
+    KeyReader(FlattenedJsonKeyCache cache) {
+      this.cache = cache;
+    }
+
+    void reset(String key) {
+      this.key = key;
+      position = 0;
+    }
+
+    boolean hasNext() {
+      return position < key.length();
+    }
+
+    boolean next() {
+      if (!hasNext()) return false;
+
+      char c = key.charAt(position);
+      if (c == '[') {
+        if (position + 1 < key.length() && key.charAt(position + 1) == '"') {
+          start = position + 2;
+          end = closingQuote(start);
+          if (end < 0) return false;
+          isIndex = false;
+          position = end + 2;
+        } else {
+          start = position + 1;
+          end = start;
+          while (end < key.length() && key.charAt(end) >= '0'
+              && key.charAt(end) <= '9') {
+            end++;
+          }
+          if (end == start || end - start > MAX_INDEX_DIGITS
+              || end == key.length() || key.charAt(end) != ']') {
+            return false;
+          }
+          isIndex = true;
+          position = end + 1;
+        }
+        return true;
+      }
+
+      if (position != 0) {
+        if (c != '.') return false;
+        position++;
+      }
+      start = position;
+      end = start;
+      while (end < key.length()) {
+        c = key.charAt(end);
+        if (c == '.' || c == '[' || c == ']') break;
+        end++;
+      }
+      if (end == start) return false;
+      isIndex = false;
+      position = end;
+      return true;
+    }
+
+    // Quotes in the names are not escaped by JsonFlattener, so the name is
+    // closed only by a "] which ends the key or is followed by another part,
+    // ex: ["a"]b.c"] is the name a"]b.c
+    private int closingQuote(int from) {
+      int i = key.indexOf("\"]", from + 1);
+      while (i >= 0 && i + 2 < key.length() && key.charAt(i + 2) != '.'
+          && key.charAt(i + 2) != '[') {
+        i = key.indexOf("\"]", i + 1);
+      }
+      return i;
+    }
+
+    boolean isIndex() {
+      return isIndex;
+    }
+
+    int index() {
+      int index = 0;
+      for (int i = start; i < end; i++) {
+        index = index * 10 + key.charAt(i) - '0';
+      }
+      return index;
+    }
+
+    String name() {
+      if (cache == null) return key.substring(start, end);
+      return cache.intern(key, start, end);
+    }
+
+    boolean nameEquals(String name) {
+      return name.length() == end - start
+          && key.regionMatches(start, name, 0, name.length());
+    }
+
+  }
+
+}
@@ -15,19 +15,45 @@
  */
 package com.github.wnameless.jpa.type.flattenedjson;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.persistence.AttributeConverter;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * 
  * {@link ToFlattenedJsonConverter} is a convenient abstract class for user to
  * create a JPA flattened JSON converter of arbitrary type simply by inheriting
- * it.
+ * it. <br>
+ * <br>
+ * The attribute type is resolved only once per converter class, together with
+ * the {@link com.fasterxml.jackson.databind.ObjectReader ObjectReader} and
+ * {@link com.fasterxml.jackson.databind.ObjectWriter ObjectWriter} built from
+ * the {@link com.fasterxml.jackson.databind.ObjectMapper ObjectMapper}. Those
+ * are dropped whenever the ObjectMapperFactory of
+ * {@link FlattenedJsonTypeConfigurer} is changed. <br>
+ * <br>
+ * Batches of attributes can be converted at once by
+ * {@link #convertAllToDatabaseColumns(List)} and
+ * {@link #convertAllToEntityAttributes(List)}, which are split across a
+ * {@link java.util.concurrent.ForkJoinPool ForkJoinPool} when one is given and
+ * the batch is large enough. Columns are stored in the compact form of
+ * {@link CompactFlattenedJson} if {@link #getCodec()} is overridden.
  *
  * @param <T>
  *          any Type
@@ -36,30 +62,316 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public abstract class ToFlattenedJsonConverter<T>
     implements AttributeConverter<T, String> {
 
+  /**
+   * The minimum size of a batch to be split across a
+   * {@link java.util.concurrent.ForkJoinPool ForkJoinPool}. Smaller batches are
+   * always converted on the calling thread.
+   */
+  public static final int PARALLEL_BATCH_THRESHOLD = 256;
+
+  private static final ConcurrentMap<Class<?>, ConverterContext> contexts =
+      new ConcurrentHashMap<>();
+
+  static void clearConverterContexts() {
+    contexts.clear();
+  }
+
+  static ConverterContext getConverterContext(Class<?> converterClass,
+      ObjectMapper objectMapper, Supplier<TypeReference<?>> typeReference) {
+    ConverterContext context = contexts.get(converterClass);
+    // Converters created before the ObjectMapperFactory is changed keep the
+    // previous ObjectMapper, so it is checked on every lookup
+    if (context == null || context.objectMapper != objectMapper) {
+      context = new ConverterContext(converterClass, objectMapper,
+          objectMapper.getTypeFactory().constructType(typeReference.get()));
+      contexts.put(converterClass, context);
+    }
+    return context;
+  }
+
   protected abstract TypeReference<T> getAttributeTypeReference();
 
-  protected ObjectMapper objectMapper =
-      FlattenedJsonTypeConfigurer.INSTANCE.getObjectMapperFactory().get();
+  /**
+   * The shared {@link com.fasterxml.jackson.databind.ObjectMapper
+   * ObjectMapper} of {@link FlattenedJsonTypeConfigurer}, which is used by all
+   * converters. It must not be reconfigured, since the change would leak into
+   * every converter while the readers and writers built from it are cached;
+   * set the ObjectMapperFactory of {@link FlattenedJsonTypeConfigurer}
+   * instead.
+   */
+  protected final ObjectMapper objectMapper =
+      FlattenedJsonTypeConfigurer.INSTANCE.getObjectMapper();
+
+  /**
+   * Returns the {@link FlattenedJsonCodec} to store columns in the compact form
+   * of {@link CompactFlattenedJson}. It is null by default, which stores plain
+   * flattened JSON strings. Columns in both forms are always readable.
+   * 
+   * @return a {@link FlattenedJsonCodec} or null
+   */
+  protected FlattenedJsonCodec getCodec() {
+    return null;
+  }
 
   @Override
   public String convertToDatabaseColumn(T attribute) {
-    String json;
-    try {
-      json = objectMapper.writeValueAsString(attribute);
-    } catch (JsonProcessingException e) {
-      throw new RuntimeException(e);
-    }
-    return FlattenedJsonTypeConfigurer.INSTANCE.createFlattener(json).flatten();
+    return toDatabaseColumn(getConverterContext(), getCodec(), attribute);
   }
 
   @Override
   public T convertToEntityAttribute(String dbData) {
-    try {
-      return objectMapper.readValue(FlattenedJsonTypeConfigurer.INSTANCE
-          .createUnflattener(dbData).unflatten(), getAttributeTypeReference());
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    return toEntityAttribute(getConverterContext(), getCodec(), dbData);
+  }
+
+  /**
+   * Returns the plain flattened JSON string of given database column, which is
+   * decoded from the compact form of {@link CompactFlattenedJson} if needed.
+   * 
+   * @param dbData
+   *          a database column in any form
+   * @return a flattened JSON string
+   */
+  public String toFlattenedJson(String dbData) {
+    return CompactFlattenedJson.decode(dbData, getCodec());
+  }
+
+  /**
+   * Returns the database column of given flattened JSON string, which is
+   * encoded into the compact form of {@link CompactFlattenedJson} if
+   * {@link #getCodec()} is not null.
+   * 
+   * @param flattenedJson
+   *          a plain flattened JSON string
+   * @return a database column
+   */
+  public String toDatabaseColumn(String flattenedJson) {
+    FlattenedJsonCodec codec = getCodec();
+    return codec == null ? flattenedJson
+        : CompactFlattenedJson.encode(flattenedJson, codec);
+  }
+
+  /**
+   * Converts given attributes into flattened JSON strings on the calling
+   * thread.
+   *
+   * @param attributes
+   *          a list of entity attribute values
+   * @return an unmodifiable list of flattened JSON strings in the order of
+   *         given attributes
+   */
+  public List<String> convertAllToDatabaseColumns(
+      List<? extends T> attributes) {
+    return convertAllToDatabaseColumns(attributes, null);
+  }
+
+  /**
+   * Converts given attributes into flattened JSON strings. The attributes are
+   * split across given {@link java.util.concurrent.ForkJoinPool ForkJoinPool}
+   * if there are at least {@link #PARALLEL_BATCH_THRESHOLD} of them.
+   *
+   * @param attributes
+   *          a list of entity attribute values
+   * @param pool
+   *          a {@link java.util.concurrent.ForkJoinPool ForkJoinPool} or null
+   *          to convert on the calling thread
+   * @return an unmodifiable list of flattened JSON strings in the order of
+   *         given attributes
+   */
+  public List<String> convertAllToDatabaseColumns(List<? extends T> attributes,
+      ForkJoinPool pool) {
+    ConverterContext context = getConverterContext();
+    FlattenedJsonCodec codec = getCodec();
+    return convertAll(attributes,
+        attribute -> toDatabaseColumn(context, codec, attribute), pool);
+  }
+
+  /**
+   * Converts given flattened JSON strings into attributes on the calling
+   * thread.
+   *
+   * @param dbData
+   *          a list of flattened JSON strings
+   * @return an unmodifiable list of entity attribute values in the order of
+   *         given strings
+   */
+  public List<T> convertAllToEntityAttributes(List<String> dbData) {
+    return convertAllToEntityAttributes(dbData, null);
+  }
+
+  /**
+   * Converts given flattened JSON strings into attributes. The strings are
+   * split across given {@link java.util.concurrent.ForkJoinPool ForkJoinPool}
+   * if there are at least {@link #PARALLEL_BATCH_THRESHOLD} of them.
+   *
+   * @param dbData
+   *          a list of flattened JSON strings
+   * @param pool
+   *          a {@link java.util.concurrent.ForkJoinPool ForkJoinPool} or null
+   *          to convert on the calling thread
+   * @return an unmodifiable list of entity attribute values in the order of
+   *         given strings
+   */
+  public List<T> convertAllToEntityAttributes(List<String> dbData,
+      ForkJoinPool pool) {
+    ConverterContext context = getConverterContext();
+    FlattenedJsonCodec codec = getCodec();
+    return convertAll(dbData, data -> toEntityAttribute(context, codec, data),
+        pool);
+  }
+
+  /**
+   * Takes a {@link FlattenedJsonSnapshot} of the flattened JSON string of given
+   * attribute without creating the string itself whenever possible.
+   *
+   * @param attribute
+   *          the entity attribute value to be converted
+   * @return a {@link FlattenedJsonSnapshot}
+   */
+  public FlattenedJsonSnapshot snapshot(T attribute) {
+    return getConverterContext().snapshot(attribute);
+  }
+
+  private ConverterContext getConverterContext() {
+    return getConverterContext(getClass(), objectMapper,
+        this::getAttributeTypeReference);
+  }
+
+  private static String toDatabaseColumn(ConverterContext context,
+      FlattenedJsonCodec codec, Object attribute) {
+    String flattened = context.flatten(attribute);
+    return codec == null ? flattened
+        : CompactFlattenedJson.encode(flattened, codec);
+  }
+
+  private static <T> T toEntityAttribute(ConverterContext context,
+      FlattenedJsonCodec codec, String dbData) {
+    return context.unflatten(CompactFlattenedJson.decode(dbData, codec));
+  }
+
+  static <S, R> List<R> convertAll(List<? extends S> sources,
+      Function<? super S, ? extends R> conversion, ForkJoinPool pool) {
+    if (pool == null || sources.size() < PARALLEL_BATCH_THRESHOLD) {
+      List<R> results = new ArrayList<>(sources.size());
+      for (S source : sources) {
+        results.add(conversion.apply(source));
+      }
+      return Collections.unmodifiableList(results);
+    }
+
+    if (!(sources instanceof RandomAccess)) {
+      sources = new ArrayList<>(sources);
     }
+    Object[] results = new Object[sources.size()];
+    pool.invoke(new ConversionTask<>(sources, conversion, results, 0,
+        results.length));
+    @SuppressWarnings("unchecked")
+    List<R> list = (List<R>) Arrays.asList(results);
+    return Collections.unmodifiableList(list);
+  }
+
+  // Each worker thread reuses its own buffers of the StreamingJsonFlattener
+  private static final class ConversionTask<S, R> extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<? extends S> sources;
+    private final Function<? super S, ? extends R> conversion;
+    private final Object[] results;
+    private final int from;
+    private final int to;
+
+    private ConversionTask(List<? extends S> sources,
+        Function<? super S, ? extends R> conversion, Object[] results,
+        int from, int to) {
+      this.sources = sources;
+      this.conversion = conversion;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= PARALLEL_BATCH_THRESHOLD / 2) {
+        for (int i = from; i < to; i++) {
+          results[i] = conversion.apply(sources.get(i));
+        }
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new ConversionTask<>(sources, conversion, results, from, middle),
+          new ConversionTask<>(sources, conversion, results, middle, to));
+    }
+
+  }
+
+  static final class ConverterContext {
+
+    private final Class<?> converterClass;
+    private final ObjectMapper objectMapper;
+    private final StreamingJsonFlattener flattener;
+    private final StreamingJsonUnflattener unflattener;
+
+    private ConverterContext(Class<?> converterClass, ObjectMapper objectMapper,
+        JavaType javaType) {
+      this.converterClass = converterClass;
+      this.objectMapper = objectMapper;
+      ObjectReader reader = objectMapper.readerFor(javaType);
+      // A root type bypasses the runtime type of the attribute, which is only
+      // safe when the attribute type can't be subclassed
+      ObjectWriter writer = javaType.isFinal() ? objectMapper.writerFor(javaType)
+          : objectMapper.writer();
+      flattener = new StreamingJsonFlattener(writer);
+      unflattener = new StreamingJsonUnflattener(reader);
+    }
+
+    String flatten(Object value) {
+      FlattenedJsonMetricsRecorder recorder =
+          FlattenedJsonTypeConfigurer.INSTANCE.getMetricsRecorder();
+      if (recorder == FlattenedJsonMetricsRecorder.NOOP) {
+        return flattener.flatten(value);
+      }
+
+      long start = System.nanoTime();
+      String flattened;
+      try {
+        flattened = flattener.flatten(value);
+      } catch (RuntimeException e) {
+        recorder.recordFlattenFailure(converterClass, e);
+        throw e;
+      }
+      recorder.recordFlatten(converterClass, System.nanoTime() - start,
+          flattened.length(), FlattenedJsonMetricsRecorder.countKeys(flattened));
+      return flattened;
+    }
+
+    <T> T unflatten(String flattenedJson) {
+      FlattenedJsonMetricsRecorder recorder =
+          FlattenedJsonTypeConfigurer.INSTANCE.getMetricsRecorder();
+      if (recorder == FlattenedJsonMetricsRecorder.NOOP) {
+        return unflattener.unflatten(flattenedJson);
+      }
+
+      long start = System.nanoTime();
+      T value;
+      try {
+        value = unflattener.unflatten(flattenedJson);
+      } catch (RuntimeException e) {
+        recorder.recordUnflattenFailure(converterClass, e);
+        throw e;
+      }
+      recorder.recordUnflatten(converterClass, System.nanoTime() - start,
+          flattenedJson == null ? 0 : flattenedJson.length(),
+          FlattenedJsonMetricsRecorder.countKeys(flattenedJson));
+      return value;
+    }
+
+    FlattenedJsonSnapshot snapshot(Object value) {
+      return flattener.snapshot(value);
+    }
+
   }
 
 }
\ No newline at end of file
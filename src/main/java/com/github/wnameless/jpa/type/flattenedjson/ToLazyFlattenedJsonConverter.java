@@ -0,0 +1,74 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import javax.persistence.AttributeConverter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.jpa.type.flattenedjson.ToFlattenedJsonConverter.ConverterContext;
+
+/**
+ * 
+ * {@link ToLazyFlattenedJsonConverter} is a convenient abstract class for user
+ * to create a JPA flattened JSON converter of {@link LazyFlattenedJson} simply
+ * by inheriting it. <br>
+ * <br>
+ * The column is not unflattened until {@link LazyFlattenedJson#get()} is
+ * called, and a {@link LazyFlattenedJson} which is never accessed is stored as
+ * it was loaded. A null {@link LazyFlattenedJson} is stored as a null column.
+ *
+ * @param <T>
+ *          any Type
+ * 
+ */
+public abstract class ToLazyFlattenedJsonConverter<T>
+    implements AttributeConverter<LazyFlattenedJson<T>, String> {
+
+  protected abstract TypeReference<T> getAttributeTypeReference();
+
+  /**
+   * The shared {@link com.fasterxml.jackson.databind.ObjectMapper
+   * ObjectMapper} of {@link FlattenedJsonTypeConfigurer}, which is used by all
+   * converters. It must not be reconfigured, since the change would leak into
+   * every converter while the readers and writers built from it are cached;
+   * set the ObjectMapperFactory of {@link FlattenedJsonTypeConfigurer}
+   * instead.
+   */
+  protected final ObjectMapper objectMapper =
+      FlattenedJsonTypeConfigurer.INSTANCE.getObjectMapper();
+
+  @Override
+  public String convertToDatabaseColumn(LazyFlattenedJson<T> attribute) {
+    if (attribute == null) return null;
+    if (!attribute.isMaterialized()) return attribute.getFlattenedJson();
+    return getConverterContext().flatten(attribute.get());
+  }
+
+  @Override
+  public LazyFlattenedJson<T> convertToEntityAttribute(String dbData) {
+    if (dbData == null) return null;
+    ConverterContext context = getConverterContext();
+    return new LazyFlattenedJson<>(dbData, context::unflatten,
+        context::flatten);
+  }
+
+  private ConverterContext getConverterContext() {
+    return ToFlattenedJsonConverter.getConverterContext(getClass(),
+        objectMapper, this::getAttributeTypeReference);
+  }
+
+}
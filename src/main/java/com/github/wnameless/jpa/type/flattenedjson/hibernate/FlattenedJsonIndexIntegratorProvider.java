@@ -0,0 +1,69 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * 
+ * {@link FlattenedJsonIndexIntegratorProvider} is designed to let Hibernate ORM
+ * maintain the side table of
+ * {@link com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexed
+ * FlattenedJsonIndexed} attributes by {@link FlattenedJsonIndexListener}. It is
+ * registered by the <i>hibernate.integrator_provider</i> property.
+ *
+ */
+public class FlattenedJsonIndexIntegratorProvider
+    implements IntegratorProvider {
+
+  @Override
+  public List<Integrator> getIntegrators() {
+    return Collections.singletonList(new Integrator() {
+
+      @Override
+      public void integrate(Metadata metadata,
+          SessionFactoryImplementor sessionFactory,
+          SessionFactoryServiceRegistry serviceRegistry) {
+        FlattenedJsonIndexListener listener = new FlattenedJsonIndexListener();
+        EventListenerRegistry registry =
+            serviceRegistry.getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.FLUSH, listener);
+        registry.appendListeners(EventType.AUTO_FLUSH, listener);
+        FlattenedJsonIndexListener.register(sessionFactory);
+      }
+
+      @Override
+      public void disintegrate(SessionFactoryImplementor sessionFactory,
+          SessionFactoryServiceRegistry serviceRegistry) {
+        FlattenedJsonIndexListener.unregister(sessionFactory);
+      }
+
+    });
+  }
+
+}
@@ -0,0 +1,410 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.Session;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.spi.AutoFlushEvent;
+import org.hibernate.event.spi.AutoFlushEventListener;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.FlushEvent;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.metamodel.model.convert.spi.JpaAttributeConverter;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.Query;
+import org.hibernate.type.CustomType;
+import org.hibernate.type.Type;
+import org.hibernate.type.descriptor.converter.AttributeConverterTypeAdapter;
+
+import com.github.wnameless.jpa.type.flattenedjson.CompactFlattenedJson;
+import com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonView;
+import com.github.wnameless.jpa.type.flattenedjson.ToFlattenedJsonConverter;
+import com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexEntry;
+import com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexed;
+
+/**
+ * 
+ * {@link FlattenedJsonIndexListener} keeps the
+ * {@link com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexEntry
+ * FlattenedJsonIndexEntry} side table in sync with the
+ * {@link com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexed
+ * FlattenedJsonIndexed} attributes of entities. The entries are written in the
+ * same transaction as the entity itself, under the entity name of
+ * {@link FlattenedJsonIndexEntry#entityNameOf(Class)}. <br>
+ * <br>
+ * The entries of all entities changed by a flush are queued and written
+ * together at the end of the flush, by one child session on the same
+ * connection, so a batch of entities costs one extra flush rather than one per
+ * entity.
+ *
+ */
+public class FlattenedJsonIndexListener implements PostInsertEventListener,
+    PostUpdateEventListener, PostDeleteEventListener, FlushEventListener,
+    AutoFlushEventListener {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final ConcurrentMap<Class<?>, List<String>> indexedAttributes =
+      new ConcurrentHashMap<>();
+  private static final Set<SessionFactoryImplementor> sessionFactories =
+      Collections
+          .synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  // Entries of each session waiting to be written at the end of its flush
+  private static final Map<EventSource, List<IndexWork>> pendingWorks =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  @Override
+  public void onPostInsert(PostInsertEvent event) {
+    index(event.getSession(), event.getPersister(), event.getId(),
+        event.getState(), null, false);
+  }
+
+  @Override
+  public void onPostUpdate(PostUpdateEvent event) {
+    index(event.getSession(), event.getPersister(), event.getId(),
+        event.getState(), event.getDirtyProperties(), true);
+  }
+
+  @Override
+  public void onPostDelete(PostDeleteEvent event) {
+    for (String attribute : getIndexedAttributes(event.getPersister())) {
+      queue(event.getSession(), new IndexWork(entityName(event.getPersister()),
+          event.getId(), attribute, true, null));
+    }
+  }
+
+  @Override
+  public void onFlush(FlushEvent event) {
+    writePendingWorks(event.getSession());
+  }
+
+  @Override
+  public void onAutoFlush(AutoFlushEvent event) {
+    writePendingWorks(event.getSession());
+  }
+
+  @Override
+  public boolean requiresPostCommitHandling(EntityPersister persister) {
+    return false;
+  }
+
+  @Deprecated
+  @Override
+  public boolean requiresPostCommitHanding(EntityPersister persister) {
+    return requiresPostCommitHandling(persister);
+  }
+
+  private void index(EventSource source, EntityPersister persister,
+      Serializable id, Object[] state, int[] dirtyProperties,
+      boolean isUpdate) {
+    for (String attribute : getIndexedAttributes(persister)) {
+      int index = persister.getEntityMetamodel().getPropertyIndex(attribute);
+      if (dirtyProperties != null && !contains(dirtyProperties, index)) {
+        continue;
+      }
+
+      // The state is flattened right away, since it may change before the
+      // entries are written
+      String flattenedJson = flatten(persister, attribute,
+          persister.getPropertyTypes()[index], state[index]);
+      if (!isUpdate && flattenedJson == null) continue;
+
+      queue(source, new IndexWork(entityName(persister), id, attribute,
+          isUpdate, flattenedJson));
+    }
+  }
+
+  private static void queue(EventSource source, IndexWork work) {
+    List<IndexWork> works = pendingWorks.get(source);
+    if (works == null) {
+      works = new ArrayList<>();
+      pendingWorks.put(source, works);
+      // Entries queued outside of any flush, ex: by the insert of an IDENTITY
+      // id, are written before the transaction completes at the latest
+      source.getActionQueue().registerProcess(
+          (BeforeTransactionCompletionProcess) session -> writePendingWorks(
+              source));
+    }
+    works.add(work);
+  }
+
+  // Writes all entries queued during a flush by a single child session
+  private static void writePendingWorks(EventSource source) {
+    List<IndexWork> works = pendingWorks.remove(source);
+    if (works == null) return;
+
+    try (Session session = openSession(source)) {
+      for (IndexWork work : works) {
+        if (work.isUpdate) {
+          deleteEntries(session, work.entityName, work.id, work.attribute);
+        }
+        if (work.flattenedJson != null) {
+          persistEntries(session, work.entityName, work.id, work.attribute,
+              FlattenedJsonView.of(work.flattenedJson), null);
+        }
+      }
+      session.flush();
+    }
+  }
+
+  // Checks if the entries of given attribute are kept by a registered listener
+  static boolean isIndexed(SessionFactoryImplementor sessionFactory,
+      EntityPersister persister, String attribute) {
+    return sessionFactories.contains(sessionFactory)
+        && getIndexedAttributes(persister).contains(attribute);
+  }
+
+  static void register(SessionFactoryImplementor sessionFactory) {
+    sessionFactories.add(sessionFactory);
+  }
+
+  static void unregister(SessionFactoryImplementor sessionFactory) {
+    sessionFactories.remove(sessionFactory);
+  }
+
+  /**
+   * Rewrites the entries of given attribute after a bulk update, which is not
+   * seen by any entity listener, ex: by {@link FlattenedJsonPatches}.
+   * 
+   * @param source
+   *          the {@link org.hibernate.Session Session} of the bulk update
+   * @param persister
+   *          the {@link org.hibernate.persister.entity.EntityPersister
+   *          EntityPersister} of the updated entities
+   * @param ids
+   *          the ids of the updated entities
+   * @param attribute
+   *          the name of an indexed attribute
+   * @param flattenedJson
+   *          the flattened JSON string holding the new values
+   * @param keys
+   *          the updated keys, or null if the whole attribute is updated
+   */
+  static void reindex(Session source, EntityPersister persister, List<?> ids,
+      String attribute, String flattenedJson, Collection<String> keys) {
+    FlattenedJsonView view = FlattenedJsonView.of(flattenedJson);
+    try (Session session = openSession(source)) {
+      for (Object id : ids) {
+        Serializable entityId = (Serializable) id;
+        if (keys == null) {
+          deleteEntries(session, entityName(persister), entityId, attribute);
+        } else {
+          deleteEntries(session, entityName(persister), entityId, attribute,
+              keys);
+        }
+        persistEntries(session, entityName(persister), entityId, attribute,
+            view, keys);
+      }
+      session.flush();
+    }
+  }
+
+  private static void persistEntries(Session session, String entityName,
+      Serializable id, String attribute, FlattenedJsonView view,
+      Collection<String> keys) {
+    for (String key : keys == null ? view.keys() : keys) {
+      // Removed keys are only deleted
+      if (!view.containsKey(key)) continue;
+
+      Object value = view.get(key);
+      // Empty objects and arrays are not indexed
+      if (value instanceof Map || value instanceof List) continue;
+
+      String text = value == null ? null : value.toString();
+      session.persist(new FlattenedJsonIndexEntry(entityName, id.toString(),
+          attribute, key, text));
+    }
+  }
+
+  private static String entityName(EntityPersister persister) {
+    return FlattenedJsonIndexEntry.entityNameOf(persister.getMappedClass());
+  }
+
+  private static Session openSession(Session source) {
+    return source.sessionWithOptions().connection().autoClose(false)
+        .openSession();
+  }
+
+  private static void deleteEntries(Session session, String entityName,
+      Serializable id, String attribute) {
+    session
+        .createQuery("DELETE FROM " + FlattenedJsonIndexEntry.class.getName()
+            + " e WHERE e.entityName = :entityName AND e.entityId = :entityId"
+            + " AND e.attributeName = :attributeName")
+        .setParameter("entityName", entityName)
+        .setParameter("entityId", id.toString())
+        .setParameter("attributeName", attribute).executeUpdate();
+  }
+
+  private static void deleteEntries(Session session, String entityName,
+      Serializable id, String attribute, Collection<String> keys) {
+    List<String> shortKeys = new ArrayList<>();
+    for (String key : keys) {
+      if (key.length() <= FlattenedJsonIndexEntry.MAX_KEY_LENGTH) {
+        shortKeys.add(key);
+        continue;
+      }
+      // Long keys are told apart by their full text
+      deleteQuery(session, entityName, id, attribute,
+          "e.flatKey = :flatKey AND e.fullKey = :fullKey")
+              .setParameter("flatKey",
+                  FlattenedJsonIndexEntry.prefix(key,
+                      FlattenedJsonIndexEntry.MAX_KEY_LENGTH))
+              .setParameter("fullKey", key).executeUpdate();
+    }
+    if (!shortKeys.isEmpty()) {
+      deleteQuery(session, entityName, id, attribute,
+          "e.flatKey IN (:flatKeys) AND e.fullKey IS NULL")
+              .setParameterList("flatKeys", shortKeys).executeUpdate();
+    }
+  }
+
+  private static Query<?> deleteQuery(Session session, String entityName,
+      Serializable id, String attribute, String keyCondition) {
+    return session
+        .createQuery("DELETE FROM " + FlattenedJsonIndexEntry.class.getName()
+            + " e WHERE e.entityName = :entityName AND e.entityId = :entityId"
+            + " AND e.attributeName = :attributeName AND " + keyCondition)
+        .setParameter("entityName", entityName)
+        .setParameter("entityId", id.toString())
+        .setParameter("attributeName", attribute);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private String flatten(EntityPersister persister, String attribute,
+      Type type, Object value) {
+    if (value == null) return null;
+
+    Object flattened = null;
+    Object converter = null;
+    if (type instanceof AttributeConverterTypeAdapter) {
+      JpaAttributeConverter jpaConverter =
+          ((AttributeConverterTypeAdapter<?>) type).getAttributeConverter();
+      flattened = jpaConverter.toRelationalValue(value);
+      converter = jpaConverter.getConverterBean().getBeanInstance();
+    } else if (type instanceof CustomType && (((CustomType) type)
+        .getUserType() instanceof FlattenedJsonUserType
+        || ((CustomType) type)
+            .getUserType() instanceof LazyFlattenedJsonUserType)) {
+      flattened = ((CustomType) type).getUserType().disassemble(value);
+      converter = ((CustomType) type).getUserType();
+    }
+
+    if (!(flattened instanceof String)) {
+      throw new IllegalStateException("Attribute[" + attribute + "] of "
+          + persister.getEntityName() + " is not a flattened JSON attribute");
+    }
+
+    // Compact columns are indexed by their plain flattened JSON strings
+    String flattenedJson = (String) flattened;
+    if (!CompactFlattenedJson.isCompact(flattenedJson)) return flattenedJson;
+    if (converter instanceof ToFlattenedJsonConverter) {
+      return ((ToFlattenedJsonConverter<?>) converter)
+          .toFlattenedJson(flattenedJson);
+    }
+    if (converter instanceof FlattenedJsonUserType) {
+      return ((FlattenedJsonUserType<?>) converter)
+          .toFlattenedJson(flattenedJson);
+    }
+    return CompactFlattenedJson.decode(flattenedJson, null);
+  }
+
+  private static List<String> getIndexedAttributes(EntityPersister persister) {
+    Class<?> entityClass = persister.getMappedClass();
+    List<String> attributes = indexedAttributes.get(entityClass);
+    if (attributes == null) {
+      attributes = new ArrayList<>();
+      for (String property : persister.getPropertyNames()) {
+        if (isIndexed(entityClass, property)) attributes.add(property);
+      }
+      attributes = attributes.isEmpty() ? Collections.emptyList()
+          : Collections.unmodifiableList(attributes);
+      indexedAttributes.put(entityClass, attributes);
+    }
+    return attributes;
+  }
+
+  // Fields are annotated under field access and getters under property access
+  private static boolean isIndexed(Class<?> entityClass, String property) {
+    String suffix =
+        Character.toUpperCase(property.charAt(0)) + property.substring(1);
+    for (Class<?> c = entityClass; c != null; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        if (field.getName().equals(property)
+            && field.isAnnotationPresent(FlattenedJsonIndexed.class)) {
+          return true;
+        }
+      }
+      for (Method method : c.getDeclaredMethods()) {
+        if (method.getParameterCount() == 0
+            && (method.getName().equals("get" + suffix)
+                || method.getName().equals("is" + suffix))
+            && method.isAnnotationPresent(FlattenedJsonIndexed.class)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean contains(int[] array, int element) {
+    for (int i : array) {
+      if (i == element) return true;
+    }
+    return false;
+  }
+
+  private static final class IndexWork {
+
+    private final String entityName;
+    private final Serializable id;
+    private final String attribute;
+    private final boolean isUpdate;
+    private final String flattenedJson;
+
+    private IndexWork(String entityName, Serializable id, String attribute,
+        boolean isUpdate, String flattenedJson) {
+      this.entityName = entityName;
+      this.id = id;
+      this.attribute = attribute;
+      this.isUpdate = isUpdate;
+      this.flattenedJson = flattenedJson;
+    }
+
+  }
+
+}
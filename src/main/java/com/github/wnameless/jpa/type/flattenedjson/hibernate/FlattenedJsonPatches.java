@@ -0,0 +1,297 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.CustomType;
+import org.hibernate.type.Type;
+import org.hibernate.type.descriptor.converter.AttributeConverterTypeAdapter;
+
+import com.github.wnameless.jpa.type.flattenedjson.CompactFlattenedJson;
+import com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonDiff;
+import com.github.wnameless.jpa.type.flattenedjson.ToFlattenedJsonConverter;
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.SimplePath;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+
+/**
+ * 
+ * {@link FlattenedJsonPatches} writes the changes of a
+ * {@link com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonDiff
+ * FlattenedJsonDiff} back to a flattened JSON column by a bulk update, so
+ * unchanged values are neither flattened nor sent to the database again. <br>
+ * <br>
+ * By default, the whole flattened JSON string of the diff target is written,
+ * which reuses the JSON texts of all unchanged values and keeps the column
+ * readable by the LIKE and regex predicates of
+ * {@link com.github.wnameless.jpa.type.flattenedjson.QueryDslHelper
+ * QueryDslHelper}. Since it overwrites the unchanged keys as well, such a
+ * write updates a single entity and is refused if the predicate matches more.
+ * When in-place updates are asked for and the FLATTENED_JSON_SET and
+ * FLATTENED_JSON_REMOVE SQL functions are registered, ex: by
+ * {@link PostgreSqlJsonbFunctionContributor} and
+ * {@link MySqlJsonFunctionContributor}, only the changed keys are updated in
+ * place instead, which is safe for any number of entities. <br>
+ * <br>
+ * Columns of converters with a
+ * {@link com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonCodec
+ * FlattenedJsonCodec} are written in the compact form of
+ * {@link com.github.wnameless.jpa.type.flattenedjson.CompactFlattenedJson
+ * CompactFlattenedJson}, which the JSON functions of databases can't update,
+ * so they are never updated in place. <br>
+ * <br>
+ * Bulk updates bypass the persistence context and the entity listeners, so
+ * entities loaded before should be refreshed or not be flushed afterward. The
+ * side table of
+ * {@link com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexed
+ * FlattenedJsonIndexed} attributes is rewritten for every updated entity, whose
+ * ids are selected before the update.
+ *
+ */
+public final class FlattenedJsonPatches {
+
+  /**
+   * The maximum number of changed keys which are updated in place, beyond
+   * which the whole flattened JSON string is written instead.
+   */
+  public static final int MAX_IN_PLACE_KEYS = 32;
+
+  private FlattenedJsonPatches() {}
+
+  /**
+   * Checks if the changed keys can be updated in place with given
+   * {@link javax.persistence.EntityManager EntityManager}.
+   * 
+   * @param entityManager
+   *          an {@link javax.persistence.EntityManager EntityManager}
+   * @return true if FLATTENED_JSON_SET and FLATTENED_JSON_REMOVE SQL functions
+   *         are registered, false otherwise
+   */
+  public static boolean isInPlaceSupported(EntityManager entityManager) {
+    SessionFactoryImplementor sessionFactory = entityManager
+        .getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+    return sessionFactory.getSqlFunctionRegistry()
+        .hasFunction("flattened_json_set")
+        && sessionFactory.getSqlFunctionRegistry()
+            .hasFunction("flattened_json_remove");
+  }
+
+  /**
+   * Writes given changes to the flattened JSON attribute of the entity matched
+   * by given predicate. The whole flattened JSON string of the diff target is
+   * written, same as {@link #write}.
+   * 
+   * @param entityManager
+   *          an {@link javax.persistence.EntityManager EntityManager}
+   * @param entity
+   *          the entity path of the update
+   * @param path
+   *          the path of a flattened JSON attribute
+   * @param where
+   *          the predicate of entities to update
+   * @param diff
+   *          a {@link com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonDiff
+   *          FlattenedJsonDiff}
+   * @return the number of updated entities, or 0 if nothing is changed
+   * @throws IllegalArgumentException
+   *           if the predicate matches more than one entity
+   */
+  public static long patch(EntityManager entityManager, EntityPath<?> entity,
+      Path<?> path, Predicate where, FlattenedJsonDiff diff) {
+    return patch(entityManager, entity, path, where, diff, false);
+  }
+
+  /**
+   * Writes given changes to the flattened JSON attribute of all entities
+   * matched by given predicate. If in-place updates are asked for, only the
+   * changed keys are updated when it is supported and there are at most
+   * {@link #MAX_IN_PLACE_KEYS} of them and the column isn't in the compact
+   * form. The database rewrites such a column in its own JSON format, ex:
+   * spaces after colons, which the LIKE and regex predicates of
+   * {@link com.github.wnameless.jpa.type.flattenedjson.QueryDslHelper
+   * QueryDslHelper} don't match anymore. Otherwise, the whole flattened JSON
+   * string of the diff target is written to a single entity, same as
+   * {@link #write}.
+   * 
+   * @param entityManager
+   *          an {@link javax.persistence.EntityManager EntityManager}
+   * @param entity
+   *          the entity path of the update
+   * @param path
+   *          the path of a flattened JSON attribute
+   * @param where
+   *          the predicate of entities to update
+   * @param diff
+   *          a {@link com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonDiff
+   *          FlattenedJsonDiff}
+   * @param inPlace
+   *          true to update only the changed keys whenever possible
+   * @return the number of updated entities, or 0 if nothing is changed
+   * @throws IllegalArgumentException
+   *           if the whole string is written and the predicate matches more
+   *           than one entity
+   */
+  public static long patch(EntityManager entityManager, EntityPath<?> entity,
+      Path<?> path, Predicate where, FlattenedJsonDiff diff, boolean inPlace) {
+    return update(entityManager, entity, path, where, diff,
+        inPlace && diff.size() <= MAX_IN_PLACE_KEYS
+            && isInPlaceSupported(entityManager));
+  }
+
+  /**
+   * Writes the whole flattened JSON string of given diff target to the
+   * flattened JSON attribute of the entity matched by given predicate, which
+   * keeps the column in the format of its converter. The unchanged keys are
+   * overwritten as well, so the predicate must match a single entity, ex: by
+   * its id.
+   * 
+   * @param entityManager
+   *          an {@link javax.persistence.EntityManager EntityManager}
+   * @param entity
+   *          the entity path of the update
+   * @param path
+   *          the path of a flattened JSON attribute
+   * @param where
+   *          the predicate of entities to update
+   * @param diff
+   *          a {@link com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonDiff
+   *          FlattenedJsonDiff}
+   * @return the number of updated entities, or 0 if nothing is changed
+   * @throws IllegalArgumentException
+   *           if the predicate matches more than one entity
+   */
+  public static long write(EntityManager entityManager, EntityPath<?> entity,
+      Path<?> path, Predicate where, FlattenedJsonDiff diff) {
+    return update(entityManager, entity, path, where, diff, false);
+  }
+
+  private static long update(EntityManager entityManager,
+      EntityPath<?> entity, Path<?> path, Predicate where,
+      FlattenedJsonDiff diff, boolean inPlace) {
+    if (diff.isEmpty()) return 0;
+
+    SessionFactoryImplementor sessionFactory = entityManager
+        .getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+    EntityPersister persister =
+        sessionFactory.getMetamodel().entityPersister(entity.getType());
+    String attribute = path.getMetadata().getName();
+    SimplePath<Object> idPath = Expressions.path(Object.class, entity,
+        persister.getIdentifierPropertyName());
+
+    // Compact columns can't be updated by the JSON functions of databases
+    if (inPlace && isCompact(persister, attribute)) inPlace = false;
+    String dbData = inPlace ? null
+        : toDatabaseColumn(persister, attribute, diff.getFlattenedJson());
+
+    // Ids are selected first, since the update may change the predicate
+    boolean indexed = FlattenedJsonIndexListener.isIndexed(sessionFactory,
+        persister, attribute);
+    List<?> ids = null;
+    if (!inPlace) {
+      // The whole string also overwrites the unchanged keys of other entities
+      ids = new JPAQuery<>(entityManager).select(idPath).from(entity)
+          .where(where).limit(2).fetch();
+      if (ids.size() > 1) {
+        throw new IllegalArgumentException("Predicate[" + where
+            + "] matches more than one " + persister.getEntityName()
+            + ", but the whole flattened JSON can only be written to one");
+      }
+      if (ids.isEmpty()) return 0;
+      where = idPath.eq(ids.get(0)).and(where);
+    } else if (indexed) {
+      ids = new JPAQuery<>(entityManager).select(idPath).from(entity)
+          .where(where).fetch();
+    }
+
+    JPAUpdateClause update = new JPAUpdateClause(entityManager, entity);
+    set(update, path, diff, dbData);
+    long count = update.where(where).execute();
+
+    if (indexed && !ids.isEmpty()) {
+      List<String> keys = null;
+      if (inPlace) {
+        keys = new ArrayList<>(diff.getChanges().keySet());
+        keys.addAll(diff.getRemovals());
+      }
+      FlattenedJsonIndexListener.reindex(entityManager.unwrap(Session.class),
+          persister, ids, attribute, diff.getFlattenedJson(), keys);
+    }
+    return count;
+  }
+
+  private static <T> void set(JPAUpdateClause update, Path<T> path,
+      FlattenedJsonDiff diff, String dbData) {
+    Expression<T> value;
+    if (dbData == null) {
+      value = path;
+      for (String key : diff.getRemovals()) {
+        value = Expressions.template(path.getType(),
+            "flattened_json_remove({0}, {1})", value,
+            Expressions.constant(key));
+      }
+      for (Entry<String, String> change : diff.getChanges().entrySet()) {
+        value = Expressions.template(path.getType(),
+            "flattened_json_set({0}, {1}, {2})", value,
+            Expressions.constant(change.getKey()),
+            Expressions.constant(change.getValue()));
+      }
+    } else {
+      // The concatenation bypasses the converter of the attribute
+      value = Expressions.template(path.getType(), "concat({0}, '')",
+          Expressions.constant(dbData));
+    }
+    update.set(path, value);
+  }
+
+  private static boolean isCompact(EntityPersister persister,
+      String attribute) {
+    return CompactFlattenedJson
+        .isCompact(toDatabaseColumn(persister, attribute, "{}"));
+  }
+
+  // Encodes the whole string the same way as the converter of the attribute
+  private static String toDatabaseColumn(EntityPersister persister,
+      String attribute, String flattenedJson) {
+    Type type = persister.getPropertyType(attribute);
+    if (type instanceof AttributeConverterTypeAdapter) {
+      Object converter = ((AttributeConverterTypeAdapter<?>) type)
+          .getAttributeConverter().getConverterBean().getBeanInstance();
+      if (converter instanceof ToFlattenedJsonConverter) {
+        return ((ToFlattenedJsonConverter<?>) converter)
+            .toDatabaseColumn(flattenedJson);
+      }
+    } else if (type instanceof CustomType && ((CustomType) type)
+        .getUserType() instanceof FlattenedJsonUserType) {
+      return ((FlattenedJsonUserType<?>) ((CustomType) type).getUserType())
+          .toDatabaseColumn(flattenedJson);
+    }
+    return flattenedJson;
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.boot.spi.MetadataBuilderContributor;
+import org.hibernate.boot.spi.MetadataBuilderImplementor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.HSQLDialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * 
+ * {@link FlattenedJsonSqlFunctionContributor} is designed to let Hibernate ORM
+ * support all the SQL functions used by
+ * {@link com.github.wnameless.jpa.type.flattenedjson.QueryDslHelper
+ * QueryDslHelper} which are available on the active
+ * {@link org.hibernate.dialect.Dialect Dialect}, so a single configuration
+ * fits any database. <br>
+ * <br>
+ * The contributor of the dialect is applied and the generic
+ * FLATTENED_JSON_MATCHES SQL function is mapped to the fastest regex operator
+ * of the database, which are:
+ * <ul>
+ * <li>PostgreSQL: ~, with {@link PostgreSqlJsonbFunctionContributor}</li>
+ * <li>MySQL: REGEXP, with {@link MySqlJsonFunctionContributor}</li>
+ * <li>H2: REGEXP_LIKE, with {@link H2FlattenedJsonFunctionContributor}</li>
+ * <li>HSQLDB: REGEXP_MATCHES, with
+ * {@link HsqldbFlattenedJsonFunctionContributor}</li>
+ * <li>Others: REGEXP_LIKE, with {@link RegexpLikeSqlFunctionContributor}</li>
+ * </ul>
+ *
+ */
+public class FlattenedJsonSqlFunctionContributor
+    implements MetadataBuilderContributor {
+
+  @Override
+  public void contribute(MetadataBuilder metadataBuilder) {
+    Dialect dialect = ((MetadataBuilderImplementor) metadataBuilder)
+        .getMetadataBuildingOptions().getServiceRegistry()
+        .getService(JdbcServices.class).getDialect();
+
+    MetadataBuilderContributor contributor;
+    String matches;
+    if (dialect instanceof PostgreSQL81Dialect) {
+      contributor = new PostgreSqlJsonbFunctionContributor();
+      matches = "?1 ~ ?2";
+    } else if (dialect instanceof MySQLDialect) {
+      contributor = new MySqlJsonFunctionContributor();
+      matches = "?1 regexp ?2";
+    } else if (dialect instanceof H2Dialect) {
+      contributor = new H2FlattenedJsonFunctionContributor();
+      matches = "regexp_like(?1, ?2)";
+    } else if (dialect instanceof HSQLDialect) {
+      contributor = new HsqldbFlattenedJsonFunctionContributor();
+      matches = "regexp_matches(?1, ?2)";
+    } else {
+      contributor = new RegexpLikeSqlFunctionContributor();
+      matches = "regexp_like(?1, ?2)";
+    }
+
+    contributor.contribute(metadataBuilder);
+    metadataBuilder.applySqlFunction("flattened_json_matches",
+        new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN,
+            "(case when (" + matches + ") then 1 else 0 end)"));
+  }
+
+}
@@ -0,0 +1,252 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import com.github.wnameless.jpa.type.flattenedjson.CompactFlattenedJson;
+import com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonCodec;
+import com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonView;
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.AbstractJPAQuery;
+import com.querydsl.jpa.impl.JPAQuery;
+
+/**
+ * 
+ * {@link FlattenedJsonStreams} streams the results of a QueryDSL query row by
+ * row through the forward-only
+ * {@link org.hibernate.ScrollableResults ScrollableResults} of Hibernate, so
+ * the memory used by an export doesn't grow with the number of rows. <br>
+ * <br>
+ * The persistence context is cleared every given number of rows, which
+ * detaches the entities streamed before and discards any unflushed change of
+ * them. Streams must be closed to release the underlying JDBC cursor, ex:
+ * try-with-resources. <br>
+ * <br>
+ * MySQL Connector/J reads the whole result set into memory unless the fetch
+ * size is Integer.MIN_VALUE, so it is used as the fetch size on MySQL instead
+ * of the clear interval. No other statement can be run on the connection
+ * until such a stream is closed, ex: lazy loading of the streamed entities.
+ *
+ */
+public final class FlattenedJsonStreams {
+
+  /**
+   * The default number of rows between two clearings of the persistence
+   * context, which is also used as the JDBC fetch size except on MySQL.
+   */
+  public static final int DEFAULT_CLEAR_INTERVAL = 1000;
+
+  private FlattenedJsonStreams() {}
+
+  /**
+   * Streams the results of given query one at a time and clears the
+   * persistence context every {@link #DEFAULT_CLEAR_INTERVAL} rows. Given
+   * query is left unchanged, and a copy of it is streamed.
+   * 
+   * @param <T>
+   *          the type of results
+   * @param entityManager
+   *          the {@link javax.persistence.EntityManager EntityManager} of the
+   *          query
+   * @param query
+   *          a QueryDSL JPA query
+   * @return a sequential {@link java.util.stream.Stream Stream} of results
+   */
+  public static <T> Stream<T> stream(EntityManager entityManager,
+      AbstractJPAQuery<T, ?> query) {
+    return stream(entityManager, query, DEFAULT_CLEAR_INTERVAL);
+  }
+
+  /**
+   * Streams the results of given query one at a time and clears the
+   * persistence context every given number of rows. Given query is left
+   * unchanged, and a copy of it is streamed.
+   * 
+   * @param <T>
+   *          the type of results
+   * @param entityManager
+   *          the {@link javax.persistence.EntityManager EntityManager} of the
+   *          query
+   * @param query
+   *          a QueryDSL JPA query
+   * @param clearInterval
+   *          the number of rows between two clearings of the persistence
+   *          context
+   * @return a sequential {@link java.util.stream.Stream Stream} of results
+   */
+  public static <T> Stream<T> stream(EntityManager entityManager,
+      AbstractJPAQuery<T, ?> query, int clearInterval) {
+    if (clearInterval < 1) {
+      throw new IllegalArgumentException("Clear interval must be positive");
+    }
+
+    // The fetch size is set on a copy, so given query doesn't keep streaming
+    AbstractJPAQuery<T, ?> streamingQuery = query.clone();
+    streamingQuery.setHint(QueryHints.FETCH_SIZE,
+        isMySql(entityManager) ? Integer.MIN_VALUE : clearInterval);
+    CloseableIterator<T> iterator = streamingQuery.iterate();
+    return StreamSupport
+        .stream(new ClearingSpliterator<>(entityManager, iterator,
+            clearInterval), false)
+        .onClose(iterator::close);
+  }
+
+  /**
+   * Streams the flattened JSON strings of given path as
+   * {@link FlattenedJsonView} one at a time without unflattening them. Given
+   * query is left unchanged, and a copy of it selects the flattened JSON
+   * strings.
+   * 
+   * @param entityManager
+   *          the {@link javax.persistence.EntityManager EntityManager} of the
+   *          query
+   * @param query
+   *          a QueryDSL JPA query
+   * @param path
+   *          any path of a flattened JSON attribute
+   * @return a sequential {@link java.util.stream.Stream Stream} of
+   *         {@link FlattenedJsonView}
+   */
+  public static Stream<FlattenedJsonView> streamViews(
+      EntityManager entityManager, JPAQuery<?> query, Path<?> path) {
+    return streamViews(entityManager, query, path, DEFAULT_CLEAR_INTERVAL);
+  }
+
+  /**
+   * Streams the flattened JSON strings of given path as
+   * {@link FlattenedJsonView} one at a time without unflattening them. Given
+   * query is left unchanged, and a copy of it selects the flattened JSON
+   * strings.
+   * 
+   * @param entityManager
+   *          the {@link javax.persistence.EntityManager EntityManager} of the
+   *          query
+   * @param query
+   *          a QueryDSL JPA query
+   * @param path
+   *          any path of a flattened JSON attribute
+   * @param clearInterval
+   *          the number of rows between two clearings of the persistence
+   *          context
+   * @return a sequential {@link java.util.stream.Stream Stream} of
+   *         {@link FlattenedJsonView}
+   */
+  public static Stream<FlattenedJsonView> streamViews(
+      EntityManager entityManager, JPAQuery<?> query, Path<?> path,
+      int clearInterval) {
+    return streamViews(entityManager, query, path, clearInterval, null);
+  }
+
+  /**
+   * Streams the flattened JSON strings of given path as
+   * {@link FlattenedJsonView} one at a time without unflattening them. Given
+   * query is left unchanged, and a copy of it selects the flattened JSON
+   * strings. Strings in the compact form of {@link CompactFlattenedJson} are
+   * decoded by given codec or {@link FlattenedJsonCodec#DEFLATE}.
+   * 
+   * @param entityManager
+   *          the {@link javax.persistence.EntityManager EntityManager} of the
+   *          query
+   * @param query
+   *          a QueryDSL JPA query
+   * @param path
+   *          any path of a flattened JSON attribute
+   * @param clearInterval
+   *          the number of rows between two clearings of the persistence
+   *          context
+   * @param codec
+   *          the {@link FlattenedJsonCodec} of the attribute or null
+   * @return a sequential {@link java.util.stream.Stream Stream} of
+   *         {@link FlattenedJsonView}
+   */
+  public static Stream<FlattenedJsonView> streamViews(
+      EntityManager entityManager, JPAQuery<?> query, Path<?> path,
+      int clearInterval, FlattenedJsonCodec codec) {
+    // The concatenation bypasses the converter of the attribute
+    JPAQuery<String> flattenedJsonQuery = query.clone()
+        .select(Expressions.stringTemplate("concat({0}, '')", path));
+    return stream(entityManager, flattenedJsonQuery, clearInterval)
+        .map(json -> json == null ? null
+            : FlattenedJsonView.of(CompactFlattenedJson.decode(json, codec)));
+  }
+
+  private static boolean isMySql(EntityManager entityManager) {
+    return entityManager.getEntityManagerFactory()
+        .unwrap(SessionFactoryImplementor.class).getJdbcServices()
+        .getDialect() instanceof MySQLDialect;
+  }
+
+  private static final class ClearingSpliterator<T> implements Spliterator<T> {
+
+    private final EntityManager entityManager;
+    private final CloseableIterator<T> iterator;
+    private final int clearInterval;
+    private int count;
+
+    private ClearingSpliterator(EntityManager entityManager,
+        CloseableIterator<T> iterator, int clearInterval) {
+      this.entityManager = entityManager;
+      this.iterator = iterator;
+      this.clearInterval = clearInterval;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      // Rows handed out before are done with once the next one is requested
+      if (count == clearInterval) {
+        entityManager.clear();
+        count = 0;
+      }
+      if (!iterator.hasNext()) {
+        iterator.close();
+        return false;
+      }
+      count++;
+      action.accept(iterator.next());
+      return true;
+    }
+
+    // Rows are read from a single cursor, so they can't be split
+    @Override
+    public Spliterator<T> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED;
+    }
+
+  }
+
+}
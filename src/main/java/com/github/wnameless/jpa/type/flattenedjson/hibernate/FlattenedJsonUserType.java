@@ -0,0 +1,190 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+
+import com.github.wnameless.jpa.type.flattenedjson.CompactFlattenedJson;
+import com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonSnapshot;
+import com.github.wnameless.jpa.type.flattenedjson.ToFlattenedJsonConverter;
+
+/**
+ * 
+ * {@link FlattenedJsonUserType} is a Hibernate {@link UserType} which stores
+ * attributes as flattened JSON by the given {@link ToFlattenedJsonConverter}
+ * and compares attributes by their {@link FlattenedJsonSnapshot}. <br>
+ * <br>
+ * A deep copy of an attribute isn't an attribute value, but an immutable
+ * holder of its database column and its {@link FlattenedJsonSnapshot}. The
+ * column of a copy is written by {@link #nullSafeSet}, {@link #disassemble}
+ * and {@link #replace} as it is, so a deep copy costs a single flattening
+ * without any unflattening. Hibernate dirty checking then compares the
+ * snapshot of the loaded state with the one of the current attribute without
+ * any string comparison. <br>
+ * <br>
+ * Because of that, listeners reading deep copied state, such as the state of
+ * an insert event or the old state of an update event, get such holders
+ * instead of attribute values, which can be turned into values by
+ * {@link #assemble}.
+ *
+ * @param <T>
+ *          any Type
+ * 
+ */
+public abstract class FlattenedJsonUserType<T> implements UserType {
+
+  private static final int[] SQL_TYPES = new int[] { Types.VARCHAR };
+
+  private final Class<T> attributeType;
+  private final ToFlattenedJsonConverter<T> converter;
+
+  /**
+   * Creates a {@link FlattenedJsonUserType}.
+   * 
+   * @param attributeType
+   *          the class of the attribute
+   * @param converter
+   *          a {@link ToFlattenedJsonConverter} of the attribute
+   */
+  protected FlattenedJsonUserType(Class<T> attributeType,
+      ToFlattenedJsonConverter<T> converter) {
+    this.attributeType = attributeType;
+    this.converter = converter;
+  }
+
+  @Override
+  public int[] sqlTypes() {
+    return SQL_TYPES.clone();
+  }
+
+  @Override
+  public Class<T> returnedClass() {
+    return attributeType;
+  }
+
+  @Override
+  public boolean equals(Object x, Object y) {
+    if (x == y) return true;
+    if (x == null || y == null) return false;
+    return snapshot(x).equals(snapshot(y));
+  }
+
+  @Override
+  public int hashCode(Object x) {
+    return x == null ? 0 : snapshot(x).hashCode();
+  }
+
+  @Override
+  public Object nullSafeGet(ResultSet rs, String[] names,
+      SharedSessionContractImplementor session, Object owner)
+      throws SQLException {
+    String dbData = rs.getString(names[0]);
+    return dbData == null ? null : converter.convertToEntityAttribute(dbData);
+  }
+
+  @Override
+  public void nullSafeSet(PreparedStatement st, Object value, int index,
+      SharedSessionContractImplementor session) throws SQLException {
+    if (value == null) {
+      st.setNull(index, Types.VARCHAR);
+    } else {
+      st.setString(index, toDatabaseColumn(value));
+    }
+  }
+
+  // Copies are only held by Hibernate, which may also write them
+  @Override
+  public Object deepCopy(Object value) {
+    if (value == null || value instanceof Copy) return value;
+
+    String dbData = converter.convertToDatabaseColumn(cast(value));
+    return new Copy(dbData, FlattenedJsonSnapshot
+        .of(CompactFlattenedJson.isCompact(dbData) ? toFlattenedJson(dbData)
+            : dbData));
+  }
+
+  @Override
+  public boolean isMutable() {
+    return true;
+  }
+
+  @Override
+  public Serializable disassemble(Object value) {
+    return value == null ? null : toDatabaseColumn(value);
+  }
+
+  @Override
+  public Object assemble(Serializable cached, Object owner) {
+    return cached == null ? null
+        : converter.convertToEntityAttribute((String) cached);
+  }
+
+  String toFlattenedJson(String dbData) {
+    return converter.toFlattenedJson(dbData);
+  }
+
+  String toDatabaseColumn(String flattenedJson) {
+    return converter.toDatabaseColumn(flattenedJson);
+  }
+
+  @Override
+  public Object replace(Object original, Object target, Object owner) {
+    return assemble(disassemble(original), owner);
+  }
+
+  private String toDatabaseColumn(Object value) {
+    return value instanceof Copy ? ((Copy) value).dbData
+        : converter.convertToDatabaseColumn(cast(value));
+  }
+
+  private FlattenedJsonSnapshot snapshot(Object value) {
+    return value instanceof Copy ? ((Copy) value).snapshot
+        : converter.snapshot(cast(value));
+  }
+
+  private T cast(Object value) {
+    return attributeType.cast(value);
+  }
+
+  // The database column of a copied attribute and the snapshot of its plain
+  // flattened JSON
+  private static final class Copy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String dbData;
+    private final FlattenedJsonSnapshot snapshot;
+
+    Copy(String dbData, FlattenedJsonSnapshot snapshot) {
+      this.dbData = dbData;
+      this.snapshot = snapshot;
+    }
+
+    @Override
+    public String toString() {
+      return dbData;
+    }
+
+  }
+
+}
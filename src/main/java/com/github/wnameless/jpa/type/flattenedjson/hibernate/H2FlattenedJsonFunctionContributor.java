@@ -0,0 +1,44 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * 
+ * {@link H2FlattenedJsonFunctionContributor} is designed to let Hibernate ORM
+ * support FLATTENED_JSON_NUMBER SQL function on H2 by REGEXP_REPLACE. <br>
+ * <br>
+ * The REGEXP_LIKE SQL function of {@link RegexpLikeSqlFunctionContributor} is
+ * also supported.
+ *
+ */
+public class H2FlattenedJsonFunctionContributor
+    extends RegexpLikeSqlFunctionContributor {
+
+  @Override
+  public void contribute(MetadataBuilder metadataBuilder) {
+    super.contribute(metadataBuilder);
+    // Replaces the whole string with the matched value or an empty string
+    metadataBuilder.applySqlFunction("flattened_json_number",
+        new SQLFunctionTemplate(StandardBasicTypes.BIG_DECIMAL,
+            "cast(nullif(regexp_replace(?1, concat('^.*(', ?2, ').*$|^.*$'),"
+                + " '$1'), '') as decimal)"));
+  }
+
+}
@@ -0,0 +1,43 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * 
+ * {@link HsqldbFlattenedJsonFunctionContributor} is designed to let Hibernate
+ * ORM support FLATTENED_JSON_NUMBER SQL function on HSQLDB by
+ * REGEXP_SUBSTRING. <br>
+ * <br>
+ * The REGEXP_MATCHES SQL function of
+ * {@link RegexpMatchesSqlFunctionContributor} is also supported.
+ *
+ */
+public class HsqldbFlattenedJsonFunctionContributor
+    extends RegexpMatchesSqlFunctionContributor {
+
+  @Override
+  public void contribute(MetadataBuilder metadataBuilder) {
+    super.contribute(metadataBuilder);
+    metadataBuilder.applySqlFunction("flattened_json_number",
+        new SQLFunctionTemplate(StandardBasicTypes.BIG_DECIMAL,
+            "cast(regexp_substring(?1, ?2) as decimal(38, 16))"));
+  }
+
+}
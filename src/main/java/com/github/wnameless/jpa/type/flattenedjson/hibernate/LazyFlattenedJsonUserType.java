@@ -0,0 +1,134 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Objects;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+
+import com.github.wnameless.jpa.type.flattenedjson.LazyFlattenedJson;
+import com.github.wnameless.jpa.type.flattenedjson.ToLazyFlattenedJsonConverter;
+
+/**
+ * 
+ * {@link LazyFlattenedJsonUserType} is a Hibernate {@link UserType} of
+ * {@link LazyFlattenedJson} attributes which is friendly to the second-level
+ * cache. An attribute is cached as its flattened JSON string, which is
+ * immutable and shared safely across sessions, and a cache hit only wraps the
+ * string into a new {@link LazyFlattenedJson} which is unflattened on the
+ * first access. <br>
+ * <br>
+ * An attribute which is never accessed is cached and copied as the string it
+ * was loaded, without any flattening or unflattening.
+ *
+ * @param <T>
+ *          any Type
+ * 
+ */
+public abstract class LazyFlattenedJsonUserType<T> implements UserType {
+
+  private static final int[] SQL_TYPES = new int[] { Types.VARCHAR };
+
+  private final ToLazyFlattenedJsonConverter<T> converter;
+
+  /**
+   * Creates a {@link LazyFlattenedJsonUserType}.
+   * 
+   * @param converter
+   *          a {@link ToLazyFlattenedJsonConverter} of the attribute
+   */
+  protected LazyFlattenedJsonUserType(
+      ToLazyFlattenedJsonConverter<T> converter) {
+    this.converter = converter;
+  }
+
+  @Override
+  public int[] sqlTypes() {
+    return SQL_TYPES.clone();
+  }
+
+  @Override
+  public Class<?> returnedClass() {
+    return LazyFlattenedJson.class;
+  }
+
+  @Override
+  public boolean equals(Object x, Object y) {
+    return Objects.equals(x, y);
+  }
+
+  @Override
+  public int hashCode(Object x) {
+    return Objects.hashCode(x);
+  }
+
+  @Override
+  public Object nullSafeGet(ResultSet rs, String[] names,
+      SharedSessionContractImplementor session, Object owner)
+      throws SQLException {
+    return converter.convertToEntityAttribute(rs.getString(names[0]));
+  }
+
+  @Override
+  public void nullSafeSet(PreparedStatement st, Object value, int index,
+      SharedSessionContractImplementor session) throws SQLException {
+    if (value == null) {
+      st.setNull(index, Types.VARCHAR);
+    } else {
+      st.setString(index, converter.convertToDatabaseColumn(cast(value)));
+    }
+  }
+
+  // A copy holds the flattened JSON string only, so it is never changed by
+  // the modifications of the accessed value
+  @Override
+  public Object deepCopy(Object value) {
+    return assemble(disassemble(value), null);
+  }
+
+  @Override
+  public boolean isMutable() {
+    return true;
+  }
+
+  @Override
+  public Serializable disassemble(Object value) {
+    return value == null ? null
+        : converter.convertToDatabaseColumn(cast(value));
+  }
+
+  @Override
+  public Object assemble(Serializable cached, Object owner) {
+    return converter.convertToEntityAttribute((String) cached);
+  }
+
+  @Override
+  public Object replace(Object original, Object target, Object owner) {
+    return deepCopy(original);
+  }
+
+  @SuppressWarnings("unchecked")
+  private LazyFlattenedJson<T> cast(Object value) {
+    return (LazyFlattenedJson<T>) value;
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * 
+ * {@link MySqlJsonFunctionContributor} is designed to let Hibernate ORM
+ * support the JSON functions of MySQL as FLATTENED_JSON_CONTAINS(JSON_CONTAINS)
+ * and FLATTENED_JSON_VALUE(JSON_EXTRACT) SQL functions, as well as
+ * FLATTENED_JSON_NUMBER(REGEXP_SUBSTR). FLATTENED_JSON_SET(JSON_SET) and
+ * FLATTENED_JSON_REMOVE(JSON_REMOVE) change a single flattened key of the
+ * column in place. <br>
+ * <br>
+ * The REGEXP_LIKE SQL function of {@link RegexpLikeSqlFunctionContributor} is
+ * also supported.
+ *
+ */
+public class MySqlJsonFunctionContributor
+    extends RegexpLikeSqlFunctionContributor {
+
+  // Flattened keys are quoted as a single member of the JSON path, so their
+  // backslashes and double quotes are escaped
+  private static final String KEY_PATH = "concat('$.\"', replace(replace(?2,"
+      + " '\\\\', '\\\\\\\\'), '\"', '\\\\\"'), '\"')";
+
+  @Override
+  public void contribute(MetadataBuilder metadataBuilder) {
+    super.contribute(metadataBuilder);
+    metadataBuilder.applySqlFunction("flattened_json_contains",
+        new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN,
+            "(case when (json_contains(?1, ?2)) then 1 else 0 end)"));
+    metadataBuilder.applySqlFunction("flattened_json_value",
+        new SQLFunctionTemplate(StandardBasicTypes.STRING,
+            "json_unquote(json_extract(?1, " + KEY_PATH + "))"));
+    metadataBuilder.applySqlFunction("flattened_json_set",
+        new SQLFunctionTemplate(StandardBasicTypes.STRING,
+            "json_set(?1, " + KEY_PATH + ", cast(?3 as json))"));
+    metadataBuilder.applySqlFunction("flattened_json_remove",
+        new SQLFunctionTemplate(StandardBasicTypes.STRING,
+            "json_remove(?1, " + KEY_PATH + ")"));
+    metadataBuilder.applySqlFunction("flattened_json_number",
+        new SQLFunctionTemplate(StandardBasicTypes.BIG_DECIMAL,
+            "cast(regexp_substr(?1, ?2) as decimal(65, 30))"));
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * 
+ * {@link PostgreSqlJsonbFunctionContributor} is designed to let Hibernate ORM
+ * support the jsonb operators of PostgreSQL as FLATTENED_JSON_CONTAINS(@&gt;)
+ * and FLATTENED_JSON_VALUE(-&gt;&gt;) SQL functions. The column is cast to
+ * jsonb, which is a no-op for jsonb columns, so a GIN index or an expression
+ * index on the column can serve these functions. FLATTENED_JSON_NUMBER is
+ * supported by SUBSTRING as well. <br>
+ * <br>
+ * FLATTENED_JSON_SET(jsonb_set) and FLATTENED_JSON_REMOVE(-) change a single
+ * flattened key of the column in place, and their jsonb results are assigned
+ * back to text columns as well. <br>
+ * <br>
+ * The SUBSTRING SQL function of {@link SubstringSqlFunctionContributor} is
+ * also supported.
+ *
+ */
+public class PostgreSqlJsonbFunctionContributor
+    extends SubstringSqlFunctionContributor {
+
+  @Override
+  public void contribute(MetadataBuilder metadataBuilder) {
+    super.contribute(metadataBuilder);
+    metadataBuilder.applySqlFunction("flattened_json_contains",
+        new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN,
+            "(case when (cast(?1 as jsonb) @> cast(?2 as jsonb)) then 1 else 0 end)"));
+    metadataBuilder.applySqlFunction("flattened_json_value",
+        new SQLFunctionTemplate(StandardBasicTypes.STRING,
+            "(cast(?1 as jsonb) ->> ?2)"));
+    metadataBuilder.applySqlFunction("flattened_json_number",
+        new SQLFunctionTemplate(StandardBasicTypes.BIG_DECIMAL,
+            "cast(substring(?1 from ?2) as numeric)"));
+    metadataBuilder.applySqlFunction("flattened_json_set",
+        new SQLFunctionTemplate(StandardBasicTypes.STRING,
+            "jsonb_set(cast(?1 as jsonb), array[cast(?2 as text)], cast(?3 as jsonb))"));
+    metadataBuilder.applySqlFunction("flattened_json_remove",
+        new SQLFunctionTemplate(StandardBasicTypes.STRING,
+            "(cast(?1 as jsonb) - cast(?2 as text))"));
+  }
+
+}
@@ -0,0 +1,196 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.index;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * 
+ * {@link FlattenedJsonIndexEntry} is a row of the side table which holds one
+ * flattened key and its value of a {@link FlattenedJsonIndexed} attribute.
+ * Keys longer than {@link #MAX_KEY_LENGTH} and values longer than
+ * {@link #MAX_VALUE_LENGTH} are indexed by their prefixes, which keeps the
+ * lookup index within the key size limit of common databases, and their full
+ * text is kept in the unindexed <i>full_key</i> and <i>full_value</i> columns.
+ * <br>
+ * <br>
+ * Entries are stored under the entity name of {@link #entityNameOf(Class)},
+ * so the entries of a subclass are found by a query on its superclass. <br>
+ * <br>
+ * This entity has to be included in the entity scanning of the persistence
+ * unit, ex: <i>@EntityScan(basePackageClasses = FlattenedJsonIndexEntry.class)
+ * </i> in Spring Boot.
+ *
+ */
+@Entity
+@Table(name = "flattened_json_index",
+    indexes = {
+        @Index(name = "flattened_json_index_lookup",
+            columnList = "entity_name,attribute_name,flat_key,flat_value,entity_id"),
+        @Index(name = "flattened_json_index_entity",
+            columnList = "entity_name,entity_id,attribute_name") })
+public class FlattenedJsonIndexEntry {
+
+  /**
+   * The max length of indexed keys.
+   */
+  public static final int MAX_KEY_LENGTH = 192;
+
+  /**
+   * The max length of indexed values.
+   */
+  public static final int MAX_VALUE_LENGTH = 192;
+
+  /**
+   * The max length of keys and values kept in full.
+   */
+  public static final int MAX_FULL_LENGTH = 1048576;
+
+  @GeneratedValue
+  @Id
+  private Long id;
+
+  @Column(name = "entity_name", nullable = false, length = 128)
+  private String entityName;
+
+  @Column(name = "entity_id", nullable = false, length = 64)
+  private String entityId;
+
+  @Column(name = "attribute_name", nullable = false, length = 64)
+  private String attributeName;
+
+  @Column(name = "flat_key", nullable = false, length = MAX_KEY_LENGTH)
+  private String flatKey;
+
+  @Column(name = "flat_value", length = MAX_VALUE_LENGTH)
+  private String value;
+
+  @Column(name = "full_key", length = MAX_FULL_LENGTH)
+  private String fullKey;
+
+  @Column(name = "full_value", length = MAX_FULL_LENGTH)
+  private String fullValue;
+
+  public FlattenedJsonIndexEntry() {}
+
+  public FlattenedJsonIndexEntry(String entityName, String entityId,
+      String attributeName, String flatKey, String value) {
+    this.entityName = entityName;
+    this.entityId = entityId;
+    this.attributeName = attributeName;
+    this.flatKey = prefix(flatKey, MAX_KEY_LENGTH);
+    this.value = prefix(value, MAX_VALUE_LENGTH);
+    if (flatKey.length() > MAX_KEY_LENGTH) fullKey = flatKey;
+    if (value != null && value.length() > MAX_VALUE_LENGTH) fullValue = value;
+  }
+
+  /**
+   * Returns the entity name which the entries of given entity class are stored
+   * under, which is the class name of its root entity.
+   *
+   * @param entityClass
+   *          an entity class
+   * @return an entity name
+   */
+  public static String entityNameOf(Class<?> entityClass) {
+    Class<?> root = entityClass;
+    for (Class<?> c = entityClass.getSuperclass(); c != null;
+        c = c.getSuperclass()) {
+      if (c.isAnnotationPresent(Entity.class)) root = c;
+    }
+    return root.getName();
+  }
+
+  /**
+   * Returns the indexed prefix of given key or value.
+   *
+   * @param text
+   *          a key or value
+   * @param maxLength
+   *          {@link #MAX_KEY_LENGTH} or {@link #MAX_VALUE_LENGTH}
+   * @return the prefix of given text
+   */
+  public static String prefix(String text, int maxLength) {
+    if (text == null || text.length() <= maxLength) return text;
+    return text.substring(0, maxLength);
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getEntityName() {
+    return entityName;
+  }
+
+  public void setEntityName(String entityName) {
+    this.entityName = entityName;
+  }
+
+  public String getEntityId() {
+    return entityId;
+  }
+
+  public void setEntityId(String entityId) {
+    this.entityId = entityId;
+  }
+
+  public String getAttributeName() {
+    return attributeName;
+  }
+
+  public void setAttributeName(String attributeName) {
+    this.attributeName = attributeName;
+  }
+
+  public String getFlatKey() {
+    return flatKey;
+  }
+
+  public void setFlatKey(String flatKey) {
+    this.flatKey = flatKey;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  public void setValue(String value) {
+    this.value = value;
+  }
+
+  public String getFullKey() {
+    return fullKey;
+  }
+
+  public void setFullKey(String fullKey) {
+    this.fullKey = fullKey;
+  }
+
+  public String getFullValue() {
+    return fullValue;
+  }
+
+  public void setFullValue(String fullValue) {
+    this.fullValue = fullValue;
+  }
+
+}
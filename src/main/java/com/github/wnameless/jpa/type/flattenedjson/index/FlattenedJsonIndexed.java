@@ -0,0 +1,40 @@
+/*
+ *
+ * Copyright 2019 Wei-Ming Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package com.github.wnameless.jpa.type.flattenedjson.index;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 
+ * {@link FlattenedJsonIndexed} marks a flattened JSON attribute of an entity
+ * whose flattened keys and values are kept in the {@link FlattenedJsonIndexEntry}
+ * side table on every insert, update and delete of the entity. It is placed on
+ * the field or the getter of the attribute, depending on the access type of
+ * the entity. <br>
+ * <br>
+ * The side table is maintained by
+ * {@link com.github.wnameless.jpa.type.flattenedjson.hibernate.FlattenedJsonIndexIntegratorProvider
+ * FlattenedJsonIndexIntegratorProvider}.
+ *
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface FlattenedJsonIndexed {}
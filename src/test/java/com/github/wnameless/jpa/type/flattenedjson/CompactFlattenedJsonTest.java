@@ -0,0 +1,99 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+public class CompactFlattenedJsonTest {
+
+  FlattenedJsonCodec identity = new FlattenedJsonCodec() {
+
+    @Override
+    public String getName() {
+      return "identity";
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) {
+      return out;
+    }
+
+    @Override
+    public InputStream decode(InputStream in) {
+      return in;
+    }
+
+  };
+
+  private void assertRoundTrip(String flattenedJson) {
+    for (FlattenedJsonCodec codec : new FlattenedJsonCodec[] {
+        FlattenedJsonCodec.DEFLATE, identity }) {
+      String compact = CompactFlattenedJson.encode(flattenedJson, codec);
+      assertTrue(compact.startsWith("~" + codec.getName() + "~"));
+      assertEquals(flattenedJson, CompactFlattenedJson.decode(compact, codec));
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    assertRoundTrip("{\"numbers[0]\":3,\"numbers[1]\":2,\"numbers[2]\":1,"
+        + "\"words[0].abc\":\"XYZ\",\"words[1].DEF\":\"uvw\"}");
+    assertRoundTrip("{\"a.b\":[],\"a.c\":{},\"\":null,\"e\\\"f\":\"\\u00e9\\\"\","
+        + "\"é😀x\":1.5,\"é😁y\":true}");
+    assertRoundTrip("{\"a\":1,\"a\":2}");
+  }
+
+  @Test
+  public void testRoundTripUnusualLayout() {
+    for (String json : new String[] { "{}", "[]", "1", "\"abc\"", "null",
+        "{ \"a\" : 1 }" }) {
+      assertRoundTrip(json);
+    }
+  }
+
+  @Test
+  public void testSharedKeyPrefixes() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < 100; i++) {
+      if (i > 0) sb.append(',');
+      sb.append("\"words.translations[3].text[" + i + "]\":" + i);
+    }
+    String flattenedJson = sb.append('}').toString();
+
+    String compact = CompactFlattenedJson.encode(flattenedJson, identity);
+    assertTrue(compact.length() < flattenedJson.length());
+    assertEquals(flattenedJson, CompactFlattenedJson.decode(compact, identity));
+  }
+
+  @Test
+  public void testLegacyData() {
+    String flattenedJson = "{\"a\":1}";
+    assertFalse(CompactFlattenedJson.isCompact(flattenedJson));
+    assertSame(flattenedJson, CompactFlattenedJson.decode(flattenedJson,
+        FlattenedJsonCodec.DEFLATE));
+    assertNull(CompactFlattenedJson.decode(null, null));
+    assertNull(CompactFlattenedJson.encode(null, FlattenedJsonCodec.DEFLATE));
+  }
+
+  @Test
+  public void testDeflateIsAlwaysReadable() {
+    String compact =
+        CompactFlattenedJson.encode("{\"a\":1}", FlattenedJsonCodec.DEFLATE);
+    assertEquals("{\"a\":1}", CompactFlattenedJson.decode(compact, null));
+    assertEquals("{\"a\":1}", CompactFlattenedJson.decode(compact, identity));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownCodec() {
+    CompactFlattenedJson.decode(
+        CompactFlattenedJson.encode("{\"a\":1}", identity), null);
+  }
+
+}
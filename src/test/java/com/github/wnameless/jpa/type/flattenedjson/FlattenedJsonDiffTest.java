@@ -0,0 +1,70 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FlattenedJsonDiffTest {
+
+  String source = "{\"numbers[0]\":3,\"numbers[1]\":2,\"numbers[2]\":1,"
+      + "\"words[0].abc\":\"XYZ\",\"words[1].DEF\":\"uvw\"}";
+
+  @Test
+  public void testBetweenStrings() {
+    FlattenedJsonDiff diff = FlattenedJsonDiff.between(source,
+        "{\"words[1].DEF\":\"uvw\",\"numbers[0]\":3,\"numbers[1]\":5,"
+            + "\"words[0].abc\":\"XYZ\",\"words[2]\":{}}");
+
+    Map<String, String> changes = new LinkedHashMap<>();
+    changes.put("numbers[1]", "5");
+    changes.put("words[2]", "{}");
+    assertEquals(changes, diff.getChanges());
+    assertEquals(Arrays.asList("numbers[2]"), diff.getRemovals());
+    assertEquals(3, diff.size());
+  }
+
+  @Test
+  public void testBetweenImmutableFlattenedJsons() {
+    ImmutableFlattenedJson json = ImmutableFlattenedJson.of(source);
+    ImmutableFlattenedJson changed =
+        json.with("numbers[10]", 0).with("words[0].abc", "ZYX")
+            .without("words[1].DEF");
+
+    FlattenedJsonDiff diff = json.diff(changed);
+    Map<String, String> changes = new LinkedHashMap<>();
+    changes.put("numbers[10]", "0");
+    changes.put("words[0].abc", "\"ZYX\"");
+    assertEquals(changes, diff.getChanges());
+    assertEquals(Arrays.asList("words[1].DEF"), diff.getRemovals());
+    assertSame(changed, diff.getTarget());
+    assertEquals("{\"numbers[0]\":3,\"numbers[1]\":2,\"numbers[2]\":1,"
+        + "\"numbers[10]\":0,\"words[0].abc\":\"ZYX\"}",
+        diff.getFlattenedJson());
+
+    FlattenedJsonDiff reverse = changed.diff(json);
+    assertEquals(Arrays.asList("numbers[10]"), reverse.getRemovals());
+    assertEquals(2, reverse.getChanges().size());
+  }
+
+  @Test
+  public void testNoChange() {
+    ImmutableFlattenedJson json = ImmutableFlattenedJson.of(source);
+
+    assertTrue(json.diff(json).isEmpty());
+    assertTrue(json.diff(ImmutableFlattenedJson.of(source)).isEmpty());
+    assertTrue(json.diff(json.with("numbers[0]", 3)).isEmpty());
+    assertTrue(FlattenedJsonDiff.between(source,
+        "{\"words[1].DEF\":\"uvw\",\"words[0].abc\":\"XYZ\","
+            + "\"numbers[2]\":1,\"numbers[1]\":2,\"numbers[0]\":3}")
+        .isEmpty());
+    assertSame(source,
+        FlattenedJsonDiff.between(source, source).getFlattenedJson());
+  }
+
+}
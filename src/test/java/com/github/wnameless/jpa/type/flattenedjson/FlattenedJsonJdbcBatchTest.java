@@ -0,0 +1,70 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FlattenedJsonJdbcBatchTest {
+
+  List<List<String>> batches = new ArrayList<>();
+
+  List<String> parameters = new ArrayList<>();
+
+  PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+      (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "setString":
+            parameters.add(args[0] + "=" + args[1]);
+            return null;
+          case "addBatch":
+            return null;
+          case "executeBatch":
+            batches.add(new ArrayList<>(parameters));
+            int[] counts = new int[parameters.size() / 2];
+            Arrays.fill(counts, 1);
+            parameters.clear();
+            return counts;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+
+  @Test
+  public void testExecuteBatch() throws SQLException {
+    List<TestModelAttr> attrs = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      TestModelAttr tma = new TestModelAttr();
+      tma.getNumbers().add(i);
+      attrs.add(tma);
+    }
+
+    int[] counts = FlattenedJsonJdbcBatch.executeBatch(statement, attrs,
+        tma -> tma, new TestModelAttrConverter(), (ps, tma, json) -> {
+          ps.setString(1, String.valueOf(tma.getNumbers().get(0)));
+          ps.setString(2, json);
+        }, 2);
+
+    assertArrayEquals(new int[] { 1, 1, 1, 1, 1 }, counts);
+    assertEquals(3, batches.size());
+    assertEquals(2, batches.get(2).size());
+    assertEquals("1=4", batches.get(2).get(0));
+    assertEquals("2={\"numbers[0]\":4,\"words\":[]}", batches.get(2).get(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExecuteBatchWithInvalidBatchSize() throws SQLException {
+    FlattenedJsonJdbcBatch.executeBatch(statement,
+        new ArrayList<TestModelAttr>(),
+        tma -> tma, new TestModelAttrConverter(), (ps, tma, json) -> {}, 0);
+  }
+
+}
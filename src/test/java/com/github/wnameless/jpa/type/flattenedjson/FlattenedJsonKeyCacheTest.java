@@ -0,0 +1,80 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FlattenedJsonKeyCacheTest {
+
+  FlattenedJsonKeyCache cache = new FlattenedJsonKeyCache(8);
+
+  @Test
+  public void testIntern() {
+    String name = cache.intern("words[0].abc", 9, 12);
+    assertEquals("abc", name);
+    assertSame(name, cache.intern("words[1].abc", 9, 12));
+    assertSame(name, cache.intern(new String("x.abc"), 2, 5));
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testWholeAndLongNames() {
+    String key = "numbers";
+    assertSame(key, cache.intern(key, 0, key.length()));
+
+    StringBuilder sb = new StringBuilder("a.");
+    for (int i = 0; i <= FlattenedJsonKeyCache.MAX_NAME_LENGTH; i++) {
+      sb.append('x');
+    }
+    String longKey = sb.toString();
+    assertNotSame(cache.intern(longKey, 2, longKey.length()),
+        cache.intern(longKey, 2, longKey.length()));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testInternWholeNames() {
+    String key = "words[0].abc";
+    assertSame(key, cache.intern(key));
+    assertSame(key, cache.intern(new String(key)));
+    assertEquals(1, cache.getHitCount());
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i <= FlattenedJsonKeyCache.MAX_NAME_LENGTH; i++) {
+      sb.append('x');
+    }
+    String longKey = sb.toString();
+    assertSame(longKey, cache.intern(longKey));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testMaxSize() {
+    assertEquals(8, cache.getMaxSize());
+    assertEquals(1, new FlattenedJsonKeyCache(1).getMaxSize());
+    assertEquals(4096, new FlattenedJsonKeyCache().getMaxSize());
+    assertEquals(16, new FlattenedJsonKeyCache(9).getMaxSize());
+
+    for (int i = 0; i < 100; i++) {
+      String key = "a.b" + i;
+      cache.intern(key, 2, key.length());
+    }
+    assertTrue(cache.size() <= 8);
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getHitCount());
+    assertEquals(0, cache.getMissCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMaxSize() {
+    new FlattenedJsonKeyCache(0);
+  }
+
+}
@@ -0,0 +1,45 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.StringPath;
+
+public class FlattenedJsonKeyPredicateTest {
+
+  StringPath path = Expressions.stringPath("testAttr");
+
+  FlattenedJsonKeyPredicate<String> predicate =
+      QueryDslHelper.flattenedJsonKey(path, "words[1].DEF");
+
+  @Test
+  public void testSameAsQueryDslHelper() {
+    assertEquals(QueryDslHelper.flattenedJsonLikeParam(path, "words[1].DEF",
+        "\"uvw\""), predicate.like("\"uvw\""));
+    assertEquals(QueryDslHelper.flattenedJsonLikeParam(path, "words[1].DEF",
+        "\"UVW\"", true), predicate.like("\"UVW\"", true));
+    assertEquals(QueryDslHelper.flattenedJsonMatches(path, "words[1].DEF",
+        "\"u.*\""), predicate.matches("\"u.*\""));
+    assertEquals(QueryDslHelper.flattenedJsonRegexpLike(path, "words[1].DEF",
+        "\"u.*\""), predicate.regexpLike("\"u.*\""));
+    assertEquals(QueryDslHelper.flattenedJsonRegexpMatches(path,
+        "words[1].DEF", "\"u.*\""), predicate.regexpMatches("\"u.*\""));
+    assertEquals(QueryDslHelper.flattenedJsonSubstringMatches(path,
+        "words[1].DEF", "\"u.*\""), predicate.substringMatches("\"u.*\""));
+    assertEquals(QueryDslHelper.flattenedJsonContains(path, "words[1].DEF",
+        "\"uvw\""), predicate.contains("\"uvw\""));
+  }
+
+  @Test
+  public void testQuoteRegExSpecialChars() {
+    String key = "a<b(c[d{e\\f^g-h=i$j!k|l]m}n)o?p*q+r.s>t";
+    assertEquals(key.replaceAll("[\\<\\(\\[\\{\\\\\\^\\-\\=\\$\\!\\|\\]\\}\\)"
+        + "\\?\\*\\+\\.\\>]", "\\\\$0"),
+        QueryDslHelper.quoteRegExSpecialChars(key));
+    assertSame("plain_key", QueryDslHelper.quoteRegExSpecialChars("plain_key"));
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class FlattenedJsonMetricsRecorderTest {
+
+  List<String> records = new ArrayList<>();
+
+  @Before
+  public void setMetricsRecorder() {
+    FlattenedJsonTypeConfigurer.INSTANCE
+        .setMetricsRecorder(new FlattenedJsonMetricsRecorder() {
+
+          @Override
+          public void recordFlatten(Class<?> converterClass, long nanos,
+              int flattenedLength, int keyCount) {
+            assertTrue(nanos >= 0);
+            records.add("flatten " + converterClass.getSimpleName() + " "
+                + flattenedLength + " " + keyCount);
+          }
+
+          @Override
+          public void recordUnflatten(Class<?> converterClass, long nanos,
+              int flattenedLength, int keyCount) {
+            assertTrue(nanos >= 0);
+            records.add("unflatten " + converterClass.getSimpleName() + " "
+                + flattenedLength + " " + keyCount);
+          }
+
+          @Override
+          public void recordUnflattenFailure(Class<?> converterClass,
+              RuntimeException cause) {
+            records.add("unflattenFailure " + converterClass.getSimpleName());
+          }
+
+        });
+  }
+
+  @After
+  public void restoreMetricsRecorder() {
+    FlattenedJsonTypeConfigurer.INSTANCE
+        .setMetricsRecorder(FlattenedJsonMetricsRecorder.NOOP);
+  }
+
+  @Test
+  public void testRecords() throws IOException {
+    JsonNodeConverter converter = new JsonNodeConverter();
+    JsonNode node = new ObjectMapper().readTree("{\"a\":[1,{\"b\":\":,\"}]}");
+
+    String flattened = converter.convertToDatabaseColumn(node);
+    converter.convertToEntityAttribute(flattened);
+    try {
+      converter.convertToEntityAttribute("{");
+    } catch (RuntimeException e) {}
+
+    assertEquals("flatten JsonNodeConverter 24 2", records.get(0));
+    assertEquals("unflatten JsonNodeConverter 24 2", records.get(1));
+    assertEquals("unflattenFailure JsonNodeConverter", records.get(2));
+  }
+
+  @Test
+  public void testCountKeys() {
+    assertEquals(0, FlattenedJsonMetricsRecorder.countKeys(null));
+    assertEquals(0, FlattenedJsonMetricsRecorder.countKeys("\"a:b\""));
+    assertEquals(0, FlattenedJsonMetricsRecorder.countKeys("{}"));
+    assertEquals(3, FlattenedJsonMetricsRecorder
+        .countKeys("{\"a\\\":\":\"\\\\\",\"b\":{},\"[\\\"c:\\\"]\":[]}"));
+  }
+
+}
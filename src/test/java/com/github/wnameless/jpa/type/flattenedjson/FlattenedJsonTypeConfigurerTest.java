@@ -0,0 +1,94 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.json.flattener.JsonFlattener;
+import com.github.wnameless.json.unflattener.JsonUnflattener;
+
+public class FlattenedJsonTypeConfigurerTest {
+
+  FlattenedJsonTypeConfigurer configurer = FlattenedJsonTypeConfigurer.INSTANCE;
+
+  Function<JsonFlattener, JsonFlattener> flattenerCustomizer =
+      configurer.getJsonFlattenerCustomizer();
+
+  Function<JsonUnflattener, JsonUnflattener> unflattenerCustomizer =
+      configurer.getJsonUnflattenerCustomizer();
+
+  Supplier<ObjectMapper> objectMapperFactory =
+      configurer.getObjectMapperFactory();
+
+  @After
+  public void restoreSettings() {
+    configurer.setJsonFlattenerCustomizer(flattenerCustomizer);
+    configurer.setJsonUnflattenerCustomizer(unflattenerCustomizer);
+    configurer.setObjectMapperFactory(objectMapperFactory);
+  }
+
+  @Test
+  public void testSharedObjectMapper() {
+    ObjectMapper objectMapper = configurer.getObjectMapper();
+    assertSame(objectMapper, configurer.getObjectMapper());
+    assertSame(objectMapper, new JsonNodeConverter().objectMapper);
+
+    configurer.setJsonFlattenerCustomizer(jf -> jf.withSeparator('/'));
+    assertSame(objectMapper, configurer.getObjectMapper());
+
+    configurer.setObjectMapperFactory(() -> new ObjectMapper());
+    assertNotSame(objectMapper, configurer.getObjectMapper());
+  }
+
+  @Test
+  public void testSettersKeepOtherOptions() {
+    FlattenedJsonMetricsRecorder metricsRecorder =
+        configurer.getMetricsRecorder();
+    FlattenedJsonKeyCache keyCache = configurer.getKeyCache();
+    Executor executor = Runnable::run;
+    try {
+      FlattenedJsonMetricsRecorder recorder =
+          new FlattenedJsonMetricsRecorder() {};
+      FlattenedJsonKeyCache cache = new FlattenedJsonKeyCache(8);
+      configurer.setMetricsRecorder(recorder);
+      configurer.setCanonicalFlattening(true);
+      configurer.setHydrationExecutor(executor);
+      configurer.setKeyCache(cache);
+      configurer.setJsonFlattenerCustomizer(jf -> jf.withSeparator('/'));
+      configurer.setObjectMapperFactory(() -> new ObjectMapper());
+
+      assertSame(recorder, configurer.getMetricsRecorder());
+      assertTrue(configurer.isCanonicalFlattening());
+      assertSame(executor, configurer.getHydrationExecutor());
+      assertSame(cache, configurer.getKeyCache());
+      assertFalse(configurer.isDefaultFlattening());
+      assertTrue(configurer.isDefaultUnflattening());
+    } finally {
+      configurer.setMetricsRecorder(metricsRecorder);
+      configurer.setCanonicalFlattening(false);
+      configurer.setHydrationExecutor(null);
+      configurer.setKeyCache(keyCache);
+    }
+  }
+
+  @Test
+  public void testDefaultFlatteningAndUnflattening() {
+    assertTrue(configurer.isDefaultFlattening());
+    assertTrue(configurer.isDefaultUnflattening());
+
+    configurer.setJsonFlattenerCustomizer(jf -> jf.withSeparator('/'));
+    configurer.setJsonUnflattenerCustomizer(ju -> ju.withSeparator('/'));
+    assertFalse(configurer.isDefaultFlattening());
+    assertFalse(configurer.isDefaultUnflattening());
+  }
+
+}
@@ -0,0 +1,122 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+public class FlattenedJsonViewTest {
+
+  FlattenedJsonView view = FlattenedJsonView.of("{\"numbers[0]\":3,"
+      + "\"numbers[1]\":12345678901,\"numbers[2]\":1.5,"
+      + "\"numbers[3]\":123456789012345678901234,\"words[0].ABC\":\"XYZ\","
+      + "\"words[1].DEF\":\"u\\\"v\\tw\",\"words[11]\":null,\"wordsX\":true,"
+      + "\"e\":{},\"f\":[],\"[\\\"g.h\\\"]\":false}");
+
+  @Test
+  public void testGet() {
+    assertEquals(11, view.size());
+    assertEquals(3, view.get("numbers[0]"));
+    assertEquals(12345678901L, view.get("numbers[1]"));
+    assertEquals(1.5, view.get("numbers[2]"));
+    assertEquals(new BigInteger("123456789012345678901234"),
+        view.get("numbers[3]"));
+    assertEquals("XYZ", view.get("words[0].ABC"));
+    assertEquals("u\"v\tw", view.get("words[1].DEF"));
+    assertNull(view.get("words[11]"));
+    assertTrue(view.containsKey("words[11]"));
+    assertEquals(Collections.emptyMap(), view.get("e"));
+    assertEquals(Collections.emptyList(), view.get("f"));
+    assertEquals(false, view.get("[\"g.h\"]"));
+    assertNull(view.get("words"));
+    assertFalse(view.containsKey("words"));
+  }
+
+  @Test
+  public void testTypedAccessors() {
+    assertEquals(Integer.valueOf(3), view.getInteger("numbers[0]"));
+    assertEquals(Long.valueOf(12345678901L), view.getLong("numbers[1]"));
+    assertEquals(Double.valueOf(1.5), view.getDouble("numbers[2]"));
+    assertEquals(new BigDecimal("1.5"), view.getBigDecimal("numbers[2]"));
+    assertEquals("XYZ", view.getString("words[0].ABC"));
+    assertEquals(Boolean.TRUE, view.getBoolean("wordsX"));
+    assertNull(view.getString("words[11]"));
+    assertNull(view.getInteger("missing"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTypedAccessorOfWrongType() {
+    view.getInteger("words[0].ABC");
+  }
+
+  @Test
+  public void testScan() {
+    Map<String, Object> words = new LinkedHashMap<>();
+    words.put("words[0].ABC", "XYZ");
+    words.put("words[1].DEF", "u\"v\tw");
+    words.put("words[11]", null);
+    assertEquals(words, view.scan("words[*]"));
+
+    assertEquals(Collections.singletonMap("words[0].ABC", "XYZ"),
+        view.scan("words[*].ABC"));
+    assertEquals(Arrays.asList("numbers[0]", "numbers[1]", "numbers[2]",
+        "numbers[3]"), new ArrayList<>(view.scan("numbers").keySet()));
+    assertEquals(Collections.emptyMap(), view.scan("word"));
+  }
+
+  @Test
+  public void testRootValues() {
+    assertEquals(0, FlattenedJsonView.of("{}").size());
+    assertEquals(0, FlattenedJsonView.of("1").size());
+  }
+
+  @Test
+  public void testKeyCache() {
+    FlattenedJsonKeyCache keyCache =
+        FlattenedJsonTypeConfigurer.INSTANCE.getKeyCache();
+    long hits = keyCache.getHitCount();
+    FlattenedJsonView a = FlattenedJsonView.of("{\"a.b[0]\":1}");
+    FlattenedJsonView b = FlattenedJsonView.of("{\"a.b[0]\":2}");
+    assertSame(a.keys().get(0), b.keys().get(0));
+    assertTrue(keyCache.getHitCount() > hits);
+  }
+
+  @Test
+  public void testSharedAcrossThreads() {
+    for (int i = 0; i < 100; i++) {
+      FlattenedJsonView shared = FlattenedJsonView.of("{\"e\":{}}");
+      assertEquals(1, IntStream.range(0, 8).parallel()
+          .mapToObj(j -> shared.get("e")).map(System::identityHashCode)
+          .distinct().count());
+    }
+  }
+
+  @Test
+  public void testLazyFlattenedJsonView() {
+    LazyJsonNodeConverter converter = new LazyJsonNodeConverter();
+    LazyFlattenedJson<JsonNode> lazy =
+        converter.convertToEntityAttribute("{\"a[0]\":1}");
+
+    assertEquals(1, lazy.view().get("a[0]"));
+    assertFalse(lazy.isMaterialized());
+
+    ((ArrayNode) lazy.get().get("a")).add(2);
+    assertEquals(2, lazy.view().get("a[1]"));
+  }
+
+}
@@ -1,11 +1,24 @@
 package com.github.wnameless.jpa.type.flattenedjson;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.persistence.EntityManager;
 
+import org.hibernate.annotations.QueryHints;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,9 +26,13 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.wnameless.jpa.type.flattenedjson.hibernate.FlattenedJsonPatches;
+import com.github.wnameless.jpa.type.flattenedjson.hibernate.FlattenedJsonStreams;
 import com.querydsl.jpa.impl.JPAQuery;
 
 @ActiveProfiles(profiles = "h2")
@@ -98,6 +115,105 @@ public class H2FlattenedJsonTypeTest {
             .fetchCount());
   }
 
+  @Test
+  public void testQuerydslHelperFlattenedJsonLikeParam() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query
+            .from(qTestModel).where(QueryDslHelper
+                .flattenedJsonLikeParam(qTestModel.testAttr, "numbers[0]", "3"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(0,
+        query
+            .from(qTestModel).where(QueryDslHelper
+                .flattenedJsonLikeParam(qTestModel.testAttr, "numbers[0]", "0"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonLikeParam(qTestModel.testAttr,
+                "words[1].def", "\"UVW\"", true))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonMatchesAll() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    Map<String, String> keyValues = new LinkedHashMap<>();
+    keyValues.put("words[1].DEF", "\"uvw\"");
+    keyValues.put("numbers[0]", "3");
+    assertEquals(1, query.from(qTestModel).where(
+        QueryDslHelper.flattenedJsonMatchesAll(qTestModel.testAttr, keyValues))
+        .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    keyValues.put("numbers[2]", "3");
+    assertEquals(0, query.from(qTestModel).where(
+        QueryDslHelper.flattenedJsonMatchesAll(qTestModel.testAttr, keyValues))
+        .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonMatchesAny() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    Map<String, String> keyValues = new LinkedHashMap<>();
+    keyValues.put("numbers[0]", "3");
+    keyValues.put("numbers[2]", "3");
+    assertEquals(2, query.from(qTestModel).where(
+        QueryDslHelper.flattenedJsonMatchesAny(qTestModel.testAttr, keyValues))
+        .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonStartsWith() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonStartsWith(qTestModel.testAttr, "numbers[0]", "3"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    Map<String, String> keyValues = new LinkedHashMap<>();
+    keyValues.put("numbers[1]", "2");
+    keyValues.put("numbers[0]", "1");
+    assertEquals(1, query.from(qTestModel).where(
+        QueryDslHelper.flattenedJsonStartsWith(qTestModel.testAttr, keyValues))
+        .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(0,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonStartsWith(qTestModel.testAttr, "numbers[1]", "2"))
+            .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testQuerydslHelperFlattenedJsonStartsWithEscapedKey()
+      throws IOException {
+    TestUserTypeModel model = new TestUserTypeModel();
+    model.setProps(objectMapper.readTree("{\"a\\\"b\\\\\":{\"c\":5}}"));
+    em.persist(model);
+    em.flush();
+
+    QTestUserTypeModel qModel = QTestUserTypeModel.testUserTypeModel;
+    assertEquals(1, new JPAQuery<TestUserTypeModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonStartsWith(qModel.props,
+            "a\"b\\.c", "5"))
+        .fetchCount());
+  }
+
   @Test
   public void testQuerydslHelperRegexpLike() {
     JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
@@ -136,4 +252,429 @@ public class H2FlattenedJsonTypeTest {
             .fetchCount());
   }
 
+  @Test
+  public void testQuerydslHelperFlattenedJsonIndexEq() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonIndexEq(qTestModel.testAttr,
+                qTestModel.id, "numbers[0]", "3"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(0,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonIndexEq(qTestModel.testAttr,
+                qTestModel.id, "numbers[0]", "0"))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonIndexLike() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonIndexLike(qTestModel.testAttr,
+                qTestModel.id, "words[1].DEF", "u%"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonIndexLike(qTestModel.testAttr,
+                qTestModel.id, "words[1].DEF", "U%", true))
+            .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testQuerydslHelperFlattenedJsonIndexOfSubclass()
+      throws IOException {
+    String longKey = new String(new char[200]).replace('\0', 'k');
+    String longValue = new String(new char[300]).replace('\0', 'v');
+    TestIndexedSubModel model = new TestIndexedSubModel();
+    model.setProps(objectMapper.readTree("{\"a\":\"b\",\"" + longKey
+        + "\":1,\"c\":\"" + longValue + "\"}"));
+    em.persist(model);
+    em.flush();
+
+    QTestIndexedModel qModel = QTestIndexedModel.testIndexedModel;
+    assertEquals(1, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "a",
+            "b"))
+        .fetchCount());
+    assertEquals(1, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id,
+            longKey, "1"))
+        .fetchCount());
+    assertEquals(0, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id,
+            longKey.substring(0, 192), "1"))
+        .fetchCount());
+    assertEquals(1, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "c",
+            longValue))
+        .fetchCount());
+    assertEquals(0, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "c",
+            longValue.substring(0, 192)))
+        .fetchCount());
+    assertEquals(1, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexLike(qModel.props, qModel.id,
+            "c", "%v"))
+        .fetchCount());
+    assertEquals(0, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexLike(qModel.props, qModel.id,
+            "c", "%x%"))
+        .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testQuerydslHelperFlattenedJsonIndexNullAndBatch()
+      throws IOException {
+    TestIndexedModel nullModel = new TestIndexedModel();
+    nullModel.setProps(objectMapper.readTree("{\"n\":null,\"m\":1}"));
+    TestIndexedModel valueModel = new TestIndexedModel();
+    valueModel.setProps(objectMapper.readTree("{\"n\":1}"));
+    em.persist(nullModel);
+    em.persist(valueModel);
+    em.flush();
+
+    QTestIndexedModel qModel = QTestIndexedModel.testIndexedModel;
+    assertEquals(Arrays.asList(nullModel.getId()),
+        new JPAQuery<TestIndexedModel>(em).select(qModel.id).from(qModel)
+            .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id,
+                "n", null))
+            .fetch());
+    assertEquals(0, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "x",
+            null))
+        .fetchCount());
+    assertEquals(2, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "n",
+            "1").or(QueryDslHelper.flattenedJsonIndexEq(qModel.props,
+                qModel.id, "m", "1")))
+        .fetchCount());
+
+    nullModel.setProps(objectMapper.readTree("{\"n\":2}"));
+    em.remove(valueModel);
+    em.flush();
+
+    assertEquals(0, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "n",
+            null))
+        .fetchCount());
+    assertEquals(0, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "n",
+            "1"))
+        .fetchCount());
+    assertEquals(1, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "n",
+            "2"))
+        .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonNumber() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonGreaterThan(qTestModel.testAttr, "numbers[0]", 2))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(2,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonBetween(qTestModel.testAttr,
+                "numbers[1]", 1.5, 2))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonIn(qTestModel.testAttr, "numbers[2]", 3, 4, 5))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(0,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonLessThan(qTestModel.testAttr, "words[0].abc", 0))
+            .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testQuerydslHelperFlattenedJsonNumberOfEscapedKey()
+      throws IOException {
+    TestUserTypeModel model = new TestUserTypeModel();
+    model.setProps(objectMapper.readTree("{\"a\\\"b\":{\"c\":5}}"));
+    em.persist(model);
+    em.flush();
+
+    QTestUserTypeModel qModel = QTestUserTypeModel.testUserTypeModel;
+    assertEquals(1, new JPAQuery<TestUserTypeModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonGreaterThan(qModel.props,
+            "a\"b.c", 4))
+        .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonMatches() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(2,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonMatches(qTestModel.testAttr, "numbers[0]", "\\d+"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper.flattenedJsonMatches(
+            qTestModel.testAttr, "words[1].DEF", "\"u.*\""))
+            .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonStreams() {
+    QTestModel qTestModel = QTestModel.testModel;
+
+    JPAQuery<TestModel> query =
+        new JPAQuery<TestModel>(em).select(qTestModel).from(qTestModel)
+            .orderBy(qTestModel.id.asc());
+    try (Stream<TestModel> stream =
+        FlattenedJsonStreams.stream(em, query, 1)) {
+      List<Integer> numbers = stream
+          .map(tm -> tm.getTestAttr().getNumbers().get(0))
+          .collect(Collectors.toList());
+      assertEquals(2, numbers.size());
+      assertEquals(3, (int) numbers.get(0));
+      assertEquals(1, (int) numbers.get(1));
+    }
+    assertNull(query.createQuery().getHints().get(QueryHints.FETCH_SIZE));
+    assertEquals(2, query.fetch().size());
+
+    query = new JPAQuery<TestModel>(em).from(qTestModel)
+        .orderBy(qTestModel.id.asc());
+    try (Stream<FlattenedJsonView> stream = FlattenedJsonStreams
+        .streamViews(em, query, qTestModel.testAttr)) {
+      List<Object> values = stream.map(view -> view.get("numbers[0]"))
+          .collect(Collectors.toList());
+      assertEquals(2, values.size());
+      assertEquals(3, values.get(0));
+      assertEquals(1, values.get(1));
+    }
+    assertEquals(3,
+        (int) query.fetchFirst().getTestAttr().getNumbers().get(0));
+  }
+
+  @Test
+  @Transactional
+  public void testCompactFlattenedJsonIndexAndStreams() throws IOException {
+    TestCompactModel model = new TestCompactModel();
+    model.setProps(objectMapper.readTree("{\"a\":{\"b\":[1,2]}}"));
+    em.persist(model);
+    em.flush();
+
+    QTestCompactModel qModel = QTestCompactModel.testCompactModel;
+    assertEquals(1, new JPAQuery<TestCompactModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id,
+            "a.b[1]", "2"))
+        .fetchCount());
+
+    JPAQuery<TestCompactModel> query =
+        new JPAQuery<TestCompactModel>(em).from(qModel);
+    try (Stream<FlattenedJsonView> stream = FlattenedJsonStreams.streamViews(
+        em, query, qModel.props, 1, TestCompactModel.IDENTITY)) {
+      assertEquals(Arrays.asList(1),
+          stream.map(view -> view.get("a.b[0]")).collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonPatches() {
+    QTestModel qTestModel = QTestModel.testModel;
+    TestModelAttrConverter converter = new TestModelAttrConverter();
+    TestModel tm = new JPAQuery<TestModel>(em).select(qTestModel)
+        .from(qTestModel).orderBy(qTestModel.id.asc()).fetchFirst();
+
+    String loaded = converter.convertToDatabaseColumn(tm.getTestAttr());
+    TestModelAttr tma = converter.convertToEntityAttribute(loaded);
+    tma.getNumbers().set(0, 4);
+    tma.getWords().remove(1);
+    FlattenedJsonDiff diff = FlattenedJsonDiff.between(loaded,
+        converter.convertToDatabaseColumn(tma));
+    assertEquals(2, diff.size());
+
+    assertFalse(FlattenedJsonPatches.isInPlaceSupported(em));
+    assertEquals(1, FlattenedJsonPatches.patch(em, qTestModel,
+        qTestModel.testAttr, qTestModel.id.eq(tm.getId()), diff));
+    em.clear();
+
+    tma = em.find(TestModel.class, tm.getId()).getTestAttr();
+    assertEquals(4, (int) tma.getNumbers().get(0));
+    assertEquals(1, tma.getWords().size());
+
+    assertEquals(1, new JPAQuery<TestModel>(em).from(qTestModel)
+        .where(qTestModel.id.eq(tm.getId()),
+            QueryDslHelper.flattenedJsonIndexEq(qTestModel.testAttr,
+                qTestModel.id, "numbers[0]", "4"))
+        .fetchCount());
+    assertEquals(0, new JPAQuery<TestModel>(em).from(qTestModel)
+        .where(qTestModel.id.eq(tm.getId()),
+            QueryDslHelper.flattenedJsonIndexEq(qTestModel.testAttr,
+                qTestModel.id, "numbers[0]", "3"))
+        .fetchCount());
+    assertEquals(1, new JPAQuery<TestModel>(em).from(qTestModel)
+        .where(qTestModel.id.eq(tm.getId()),
+            QueryDslHelper.flattenedJsonIndexEq(qTestModel.testAttr,
+                qTestModel.id, "words[0].abc", "XYZ"))
+        .fetchCount());
+    assertEquals(0, new JPAQuery<TestModel>(em).from(qTestModel)
+        .where(qTestModel.id.eq(tm.getId()),
+            QueryDslHelper.flattenedJsonIndexLike(qTestModel.testAttr,
+                qTestModel.id, "words[1].DEF", "%"))
+        .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonPatchesOfManyEntities() throws IOException {
+    TestIndexedModel first = new TestIndexedModel();
+    first.setProps(objectMapper.readTree("{\"a\":1,\"b\":1}"));
+    TestIndexedModel second = new TestIndexedModel();
+    second.setProps(objectMapper.readTree("{\"a\":1,\"c\":2}"));
+    em.persist(first);
+    em.persist(second);
+    em.flush();
+    em.clear();
+
+    QTestIndexedModel qModel = QTestIndexedModel.testIndexedModel;
+    FlattenedJsonDiff diff =
+        FlattenedJsonDiff.between("{\"a\":1,\"b\":1}", "{\"a\":2,\"b\":1}");
+    try {
+      FlattenedJsonPatches.patch(em, qModel, qModel.props,
+          qModel.id.in(first.getId(), second.getId()), diff, true);
+      fail();
+    } catch (IllegalArgumentException e) {}
+
+    assertEquals(objectMapper.readTree("{\"a\":1,\"b\":1}"),
+        em.find(TestIndexedModel.class, first.getId()).getProps());
+    assertEquals(objectMapper.readTree("{\"a\":1,\"c\":2}"),
+        em.find(TestIndexedModel.class, second.getId()).getProps());
+    em.clear();
+
+    assertEquals(1, FlattenedJsonPatches.patch(em, qModel, qModel.props,
+        qModel.id.eq(first.getId()), diff));
+    assertEquals(0, FlattenedJsonPatches.patch(em, qModel, qModel.props,
+        qModel.id.eq(-1L), diff));
+    assertEquals(objectMapper.readTree("{\"a\":2,\"b\":1}"),
+        em.find(TestIndexedModel.class, first.getId()).getProps());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonPatchesOfCompactColumn() throws IOException {
+    TestCompactModel model = new TestCompactModel();
+    model.setProps(objectMapper.readTree("{\"a\":1}"));
+    em.persist(model);
+    em.flush();
+    em.clear();
+
+    QTestCompactModel qModel = QTestCompactModel.testCompactModel;
+    assertEquals(1,
+        FlattenedJsonPatches.patch(em, qModel, qModel.props,
+            qModel.id.eq(model.getId()),
+            FlattenedJsonDiff.between("{\"a\":1}", "{\"a\":2}")));
+
+    String dbData = (String) em
+        .createNativeQuery("SELECT props FROM test_compact_model WHERE id = ?")
+        .setParameter(1, model.getId()).getSingleResult();
+    assertTrue(CompactFlattenedJson.isCompact(dbData));
+    assertEquals(objectMapper.readTree("{\"a\":2}"),
+        em.find(TestCompactModel.class, model.getId()).getProps());
+    assertEquals(1, new JPAQuery<TestCompactModel>(em).from(qModel)
+        .where(QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "a",
+            "2"))
+        .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonUserType() throws IOException {
+    TestUserTypeModel model = new TestUserTypeModel();
+    model.setProps(objectMapper.readTree("{\"a\":{\"b\":[1,2]}}"));
+    em.persist(model);
+    em.flush();
+    em.clear();
+
+    model = em.find(TestUserTypeModel.class, model.getId());
+    assertEquals(objectMapper.readTree("{\"a\":{\"b\":[1,2]}}"),
+        model.getProps());
+    ((ObjectNode) model.getProps().get("a")).put("c", "d");
+    em.flush();
+    em.clear();
+
+    model = em.find(TestUserTypeModel.class, model.getId());
+    assertEquals(objectMapper.readTree("{\"a\":{\"b\":[1,2],\"c\":\"d\"}}"),
+        model.getProps());
+    em.clear();
+
+    model.setProps(objectMapper.readTree("{\"e\":true}"));
+    TestUserTypeModel merged = em.merge(model);
+    em.flush();
+    em.clear();
+
+    assertEquals(objectMapper.readTree("{\"e\":true}"),
+        em.find(TestUserTypeModel.class, merged.getId()).getProps());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonUserTypeConversions() throws IOException {
+    TestUserTypeModel model = new TestUserTypeModel();
+    model.setProps(objectMapper.readTree("{\"a\":{\"b\":[1,2]}}"));
+    em.persist(model);
+    em.flush();
+    em.clear();
+
+    List<String> records = new ArrayList<>();
+    FlattenedJsonTypeConfigurer.INSTANCE
+        .setMetricsRecorder(new FlattenedJsonMetricsRecorder() {
+
+          @Override
+          public void recordFlatten(Class<?> converterClass, long nanos,
+              int flattenedLength, int keyCount) {
+            records.add("flatten");
+          }
+
+          @Override
+          public void recordUnflatten(Class<?> converterClass, long nanos,
+              int flattenedLength, int keyCount) {
+            records.add("unflatten");
+          }
+
+        });
+    try {
+      model = em.find(TestUserTypeModel.class, model.getId());
+      assertEquals(Arrays.asList("unflatten", "flatten"), records);
+
+      records.clear();
+      em.flush();
+      assertEquals(Collections.emptyList(), records);
+    } finally {
+      FlattenedJsonTypeConfigurer.INSTANCE
+          .setMetricsRecorder(FlattenedJsonMetricsRecorder.NOOP);
+    }
+  }
+
 }
@@ -135,4 +135,51 @@ public class HsqldbFlattenedJsonTypeTest {
             .fetchCount());
   }
 
+  @Test
+  public void testQuerydslHelperFlattenedJsonNumber() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonGreaterThan(qTestModel.testAttr, "numbers[0]", 2))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(2,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonBetween(qTestModel.testAttr,
+                "numbers[1]", 1.5, 2))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonIn(qTestModel.testAttr, "numbers[2]", 3, 4, 5))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(0,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonLessThan(qTestModel.testAttr, "words[0].abc", 0))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonMatches() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(2,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonMatches(qTestModel.testAttr, "numbers[0]", "\\d+"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper.flattenedJsonMatches(
+            qTestModel.testAttr, "words[1].DEF", "\"u.*\""))
+            .fetchCount());
+  }
+
 }
@@ -0,0 +1,123 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ImmutableFlattenedJsonTest {
+
+  ImmutableFlattenedJsonConverter converter =
+      new ImmutableFlattenedJsonConverter();
+
+  String dbData = "{\"numbers[10]\":3,\"numbers[2]\":2,"
+      + "\"words[0].abc\":\"XYZ\",\"words[1]\":{},\"e\\\"f\":null}";
+
+  @Test
+  public void testRead() {
+    ImmutableFlattenedJson json = converter.convertToEntityAttribute(dbData);
+
+    assertEquals(5, json.size());
+    assertEquals(Arrays.asList("e\"f", "numbers[2]", "numbers[10]",
+        "words[0].abc", "words[1]"), json.keys());
+    assertTrue(json.containsKey("numbers[10]"));
+    assertFalse(json.containsKey("numbers[1]"));
+    assertEquals("\"XYZ\"", json.getJson("words[0].abc"));
+    assertEquals("XYZ", json.get("words[0].abc"));
+    assertEquals(3, json.get("numbers[10]"));
+    assertEquals(Collections.emptyMap(), json.get("words[1]"));
+    assertNull(json.get("e\"f"));
+    assertNull(json.get("numbers[1]"));
+    assertEquals(3, json.view().get("numbers[10]"));
+  }
+
+  @Test
+  public void testWriteBackUnchanged() {
+    ImmutableFlattenedJson json = converter.convertToEntityAttribute(dbData);
+    json.size();
+
+    assertSame(dbData, converter.convertToDatabaseColumn(json));
+    assertSame(json, json.with("numbers[2]", 2));
+    assertSame(json, json.without("numbers[1]"));
+    assertNull(converter.convertToDatabaseColumn(null));
+    assertNull(converter.convertToEntityAttribute(null));
+  }
+
+  @Test
+  public void testWithAndWithout() {
+    ImmutableFlattenedJson json = converter.convertToEntityAttribute(dbData);
+
+    ImmutableFlattenedJson changed = json.with("numbers[2]", 5)
+        .with("numbers[3]", "x").with("words[2]", new ArrayList<>())
+        .without("e\"f");
+    assertEquals("{\"numbers[2]\":5,\"numbers[3]\":\"x\",\"numbers[10]\":3,"
+        + "\"words[0].abc\":\"XYZ\",\"words[1]\":{},\"words[2]\":[]}",
+        converter.convertToDatabaseColumn(changed));
+    assertEquals(2, json.get("numbers[2]"));
+    assertEquals(5, json.size());
+    assertEquals(changed,
+        ImmutableFlattenedJson.of(changed.getFlattenedJson()));
+    assertEquals(changed.hashCode(),
+        ImmutableFlattenedJson.of(changed.getFlattenedJson()).hashCode());
+    assertNotEquals(json.hashCode(), changed.hashCode());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWithInvalidValue() {
+    ImmutableFlattenedJson.empty().with("a", Arrays.asList(1));
+  }
+
+  @Test
+  public void testEquals() {
+    ImmutableFlattenedJson json = ImmutableFlattenedJson.of(dbData);
+    ImmutableFlattenedJson reordered = ImmutableFlattenedJson
+        .of("{\"e\\\"f\":null,\"numbers[2]\":2,\"numbers[10]\":3,"
+            + "\"words[0].abc\":\"XYZ\",\"words[1]\":{}}");
+
+    assertEquals(json, ImmutableFlattenedJson.of(new String(dbData)));
+    assertEquals(json, reordered);
+    assertEquals(json.hashCode(), reordered.hashCode());
+    assertNotEquals(json, reordered.with("numbers[2]", 1));
+    assertEquals(json, reordered.with("numbers[2]", 1).with("numbers[2]", 2));
+    assertEquals(ImmutableFlattenedJson.empty(),
+        ImmutableFlattenedJson.of("{\"a\":1}").without("a"));
+  }
+
+  @Test
+  public void testFrom() {
+    TestModelAttr tma = new TestModelAttr();
+    tma.getNumbers().add(1);
+
+    assertEquals(ImmutableFlattenedJson.of("{\"numbers[0]\":1,\"words\":[]}"),
+        ImmutableFlattenedJson.from(tma));
+  }
+
+  @Test
+  public void testSerialization() throws IOException, ClassNotFoundException {
+    ImmutableFlattenedJson json =
+        ImmutableFlattenedJson.of(dbData).with("numbers[2]", 5);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(json);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      assertEquals(json, in.readObject());
+    }
+  }
+
+}
@@ -0,0 +1,149 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class LazyJsonNodeConverterTest {
+
+  LazyJsonNodeConverter converter = new LazyJsonNodeConverter();
+
+  // Key order differs from the one of StreamingJsonFlattener on purpose
+  String dbData = "{\"b\":1,\"a.c[0]\":\"x\"}";
+
+  @Test
+  public void testUnaccessedValueIsWrittenBackAsItWas() {
+    LazyFlattenedJson<JsonNode> lazy =
+        converter.convertToEntityAttribute(dbData);
+
+    assertFalse(lazy.isMaterialized());
+    assertSame(dbData, converter.convertToDatabaseColumn(lazy));
+    assertEquals(lazy, converter.convertToEntityAttribute(dbData));
+    assertFalse(lazy.isMaterialized());
+  }
+
+  @Test
+  public void testAccessedValueIsFlattened() throws IOException {
+    LazyFlattenedJson<JsonNode> lazy =
+        converter.convertToEntityAttribute(dbData);
+
+    assertEquals(new ObjectMapper().readTree("{\"b\":1,\"a\":{\"c\":[\"x\"]}}"),
+        lazy.get());
+    assertTrue(lazy.isMaterialized());
+    assertEquals("{\"b\":1,\"a.c[0]\":\"x\"}",
+        converter.convertToDatabaseColumn(lazy));
+
+    ((ObjectNode) lazy.get()).put("b", 2);
+    assertEquals("{\"b\":2,\"a.c[0]\":\"x\"}",
+        converter.convertToDatabaseColumn(lazy));
+    assertNotEquals(converter.convertToEntityAttribute(dbData), lazy);
+  }
+
+  @Test
+  public void testGivenValue() throws IOException {
+    JsonNode node = new ObjectMapper().readTree("{\"a\":{\"c\":[\"x\"]}}");
+    LazyFlattenedJson<JsonNode> lazy = LazyFlattenedJson.of(node);
+
+    assertTrue(lazy.isMaterialized());
+    assertSame(node, lazy.get());
+    assertEquals("{\"a.c[0]\":\"x\"}", converter.convertToDatabaseColumn(lazy));
+    assertEquals(lazy,
+        converter.convertToEntityAttribute("{\"a.c[0]\":\"x\"}"));
+  }
+
+  @Test
+  public void testEqualsAndHashCodeDontUnflatten() {
+    LazyFlattenedJson<JsonNode> lazy =
+        converter.convertToEntityAttribute(dbData);
+    LazyFlattenedJson<JsonNode> accessed =
+        converter.convertToEntityAttribute(dbData);
+    accessed.get();
+
+    assertEquals(dbData.hashCode(), lazy.hashCode());
+    assertEquals(lazy, accessed);
+    assertEquals(accessed, lazy);
+    assertEquals(lazy.hashCode(), accessed.hashCode());
+    assertEquals(1, new HashSet<>(Arrays.asList(lazy, accessed)).size());
+    assertFalse(lazy.isMaterialized());
+
+    ((ObjectNode) accessed.get()).put("b", 2);
+    assertNotEquals(lazy, accessed);
+    assertFalse(lazy.isMaterialized());
+  }
+
+  @Test
+  public void testNull() {
+    assertNull(converter.convertToDatabaseColumn(null));
+    assertNull(converter.convertToEntityAttribute(null));
+  }
+
+  private List<LazyFlattenedJson<JsonNode>> lazies(int size, int... failures) {
+    List<LazyFlattenedJson<JsonNode>> lazies = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      lazies.add(converter.convertToEntityAttribute("{\"a\":" + i + "}"));
+    }
+    for (int failure : failures) {
+      lazies.set(failure,
+          converter.convertToEntityAttribute("{\"a\":" + failure));
+    }
+    return lazies;
+  }
+
+  @Test
+  public void testMaterializeAll() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<LazyFlattenedJson<JsonNode>> lazies = lazies(1000);
+      assertSame(lazies,
+          LazyFlattenedJson.materializeAll(lazies, lazy -> lazy, executor));
+      for (int i = 0; i < lazies.size(); i++) {
+        assertTrue(lazies.get(i).isMaterialized());
+        assertEquals(i, lazies.get(i).get().get("a").asInt());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testMaterializeAllFailure() {
+    String expected = null;
+    try {
+      LazyFlattenedJson.materializeAll(lazies(1000, 300, 900), lazy -> lazy,
+          null);
+      fail();
+    } catch (RuntimeException e) {
+      expected = e.getMessage();
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      LazyFlattenedJson.materializeAll(lazies(1000, 300, 900), lazy -> lazy,
+          executor);
+      fail();
+    } catch (RuntimeException e) {
+      assertEquals(expected, e.getMessage());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
@@ -1,12 +1,17 @@
 package com.github.wnameless.jpa.type.flattenedjson;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.persistence.EntityManager;
 
+import org.hibernate.annotations.QueryHints;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,9 +19,12 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.jpa.type.flattenedjson.hibernate.FlattenedJsonPatches;
+import com.github.wnameless.jpa.type.flattenedjson.hibernate.FlattenedJsonStreams;
 import com.querydsl.jpa.impl.JPAQuery;
 
 @ActiveProfiles(profiles = "mysql")
@@ -136,4 +144,147 @@ public class MySqlFlattenedJsonTypeTest {
             .fetchCount());
   }
 
+  @Test
+  public void testQuerydslHelperFlattenedJsonContains() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query
+            .from(qTestModel).where(QueryDslHelper
+                .flattenedJsonContains(qTestModel.testAttr, "numbers[0]", "3"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonContains(qTestModel.testAttr,
+                "words[1].DEF", "\"uvw\""))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonValue() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper
+                .flattenedJsonValue(qTestModel.testAttr, "numbers[0]").eq("3"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper
+                .flattenedJsonValue(qTestModel.testAttr, "words[0].abc")
+                .eq("XYZ"))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonNumber() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonGreaterThan(qTestModel.testAttr, "numbers[0]", 2))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(2,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonBetween(qTestModel.testAttr,
+                "numbers[1]", 1.5, 2))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonIn(qTestModel.testAttr, "numbers[2]", 3, 4, 5))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(0,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonLessThan(qTestModel.testAttr, "words[0].abc", 0))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonMatches() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(2,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonMatches(qTestModel.testAttr, "numbers[0]", "\\d+"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper.flattenedJsonMatches(
+            qTestModel.testAttr, "words[1].DEF", "\"u.*\""))
+            .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonPatchesOfEscapedKey() throws IOException {
+    TestUserTypeModel model = new TestUserTypeModel();
+    model.setProps(objectMapper.readTree("{\"a\\\"b\\\\c\":\"d\",\"e\":1}"));
+    em.persist(model);
+    em.flush();
+
+    QTestUserTypeModel qModel = QTestUserTypeModel.testUserTypeModel;
+    assertEquals("d",
+        new JPAQuery<TestUserTypeModel>(em).from(qModel)
+            .select(QueryDslHelper.flattenedJsonValue(qModel.props,
+                "a\"b\\c"))
+            .where(qModel.id.eq(model.getId())).fetchOne());
+
+    FlattenedJsonDiff diff = FlattenedJsonDiff.between(
+        "{\"a\\\"b\\\\c\":\"d\",\"e\":1}", "{\"e\":1}");
+    assertEquals(1, FlattenedJsonPatches.patch(em, qModel, qModel.props,
+        qModel.id.eq(model.getId()), diff, true));
+    em.clear();
+
+    assertEquals(objectMapper.readTree("{\"e\":1}"),
+        em.find(TestUserTypeModel.class, model.getId()).getProps());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonStreams() {
+    QTestModel qTestModel = QTestModel.testModel;
+
+    JPAQuery<TestModel> query =
+        new JPAQuery<TestModel>(em).select(qTestModel).from(qTestModel)
+            .orderBy(qTestModel.id.asc());
+    try (Stream<TestModel> stream =
+        FlattenedJsonStreams.stream(em, query, 1)) {
+      List<Integer> numbers = stream
+          .map(tm -> tm.getTestAttr().getNumbers().get(0))
+          .collect(Collectors.toList());
+      assertEquals(2, numbers.size());
+      assertEquals(3, (int) numbers.get(0));
+      assertEquals(1, (int) numbers.get(1));
+    }
+    assertNull(query.createQuery().getHints().get(QueryHints.FETCH_SIZE));
+    assertEquals(2, query.fetch().size());
+
+    query = new JPAQuery<TestModel>(em).from(qTestModel)
+        .orderBy(qTestModel.id.asc());
+    try (Stream<FlattenedJsonView> stream = FlattenedJsonStreams
+        .streamViews(em, query, qTestModel.testAttr)) {
+      List<Object> values = stream.map(view -> view.get("numbers[0]"))
+          .collect(Collectors.toList());
+      assertEquals(2, values.size());
+      assertEquals(3, values.get(0));
+      assertEquals(1, values.get(1));
+    }
+  }
+
 }
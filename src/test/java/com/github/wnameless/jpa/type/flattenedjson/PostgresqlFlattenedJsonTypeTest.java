@@ -1,9 +1,12 @@
 package com.github.wnameless.jpa.type.flattenedjson;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 
@@ -14,9 +17,11 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.jpa.type.flattenedjson.hibernate.FlattenedJsonPatches;
 import com.querydsl.jpa.impl.JPAQuery;
 
 @ActiveProfiles(profiles = "postgresql")
@@ -137,4 +142,219 @@ public class PostgresqlFlattenedJsonTypeTest {
             .fetchCount());
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testQuerydslHelperFlattenedJsonContains() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query
+            .from(qTestModel).where(QueryDslHelper
+                .flattenedJsonContains(qTestModel.testAttr, "numbers[0]", "3"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonContains(qTestModel.testAttr,
+                "words[1].DEF", "\"uvw\""))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonValue() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper
+                .flattenedJsonValue(qTestModel.testAttr, "numbers[0]").eq("3"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper
+                .flattenedJsonValue(qTestModel.testAttr, "words[0].abc")
+                .eq("XYZ"))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonMatchesAllByJsonContains() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    Map<String, String> keyValues = new LinkedHashMap<>();
+    keyValues.put("words[1].DEF", "\"uvw\"");
+    keyValues.put("numbers[0]", "3");
+    assertEquals(1,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonMatchesAll(qTestModel.testAttr,
+                keyValues, FlattenedJsonMatchStrategy.JSON_CONTAINS))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonMatchesAnyBySubstring() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    Map<String, String> keyValues = new LinkedHashMap<>();
+    keyValues.put("numbers[0]", "3");
+    keyValues.put("numbers[2]", "3");
+    assertEquals(2,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonMatchesAny(qTestModel.testAttr,
+                keyValues, FlattenedJsonMatchStrategy.SUBSTRING))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonNumber() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonGreaterThan(qTestModel.testAttr, "numbers[0]", 2))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(2,
+        query.from(qTestModel)
+            .where(QueryDslHelper.flattenedJsonBetween(qTestModel.testAttr,
+                "numbers[1]", 1.5, 2))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonIn(qTestModel.testAttr, "numbers[2]", 3, 4, 5))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(0,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonLessThan(qTestModel.testAttr, "words[0].abc", 0))
+            .fetchCount());
+  }
+
+  @Test
+  public void testQuerydslHelperFlattenedJsonMatches() {
+    JPAQuery<TestModel> query = new JPAQuery<TestModel>(em);
+    QTestModel qTestModel = QTestModel.testModel;
+
+    assertEquals(2,
+        query.from(qTestModel).where(QueryDslHelper
+            .flattenedJsonMatches(qTestModel.testAttr, "numbers[0]", "\\d+"))
+            .fetchCount());
+
+    query = new JPAQuery<TestModel>(em);
+    assertEquals(1,
+        query.from(qTestModel).where(QueryDslHelper.flattenedJsonMatches(
+            qTestModel.testAttr, "words[1].DEF", "\"u.*\""))
+            .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonPatches() {
+    QTestModel qTestModel = QTestModel.testModel;
+    TestModelAttrConverter converter = new TestModelAttrConverter();
+    TestModel tm = new JPAQuery<TestModel>(em).select(qTestModel)
+        .from(qTestModel).orderBy(qTestModel.id.asc()).fetchFirst();
+
+    String loaded = converter.convertToDatabaseColumn(tm.getTestAttr());
+    TestModelAttr tma = converter.convertToEntityAttribute(loaded);
+    tma.getNumbers().set(0, 4);
+    tma.getWords().remove(1);
+    FlattenedJsonDiff diff = FlattenedJsonDiff.between(loaded,
+        converter.convertToDatabaseColumn(tma));
+    assertEquals(2, diff.size());
+
+    assertTrue(FlattenedJsonPatches.isInPlaceSupported(em));
+    assertEquals(1, FlattenedJsonPatches.patch(em, qTestModel,
+        qTestModel.testAttr, qTestModel.id.eq(tm.getId()), diff, true));
+    em.clear();
+
+    tma = em.find(TestModel.class, tm.getId()).getTestAttr();
+    assertEquals(4, (int) tma.getNumbers().get(0));
+    assertEquals(1, tma.getWords().size());
+
+    assertEquals(1, new JPAQuery<TestModel>(em).from(qTestModel)
+        .where(qTestModel.id.eq(tm.getId()),
+            QueryDslHelper.flattenedJsonIndexEq(qTestModel.testAttr,
+                qTestModel.id, "numbers[0]", "4"))
+        .fetchCount());
+    assertEquals(0, new JPAQuery<TestModel>(em).from(qTestModel)
+        .where(qTestModel.id.eq(tm.getId()),
+            QueryDslHelper.flattenedJsonIndexEq(qTestModel.testAttr,
+                qTestModel.id, "numbers[0]", "3"))
+        .fetchCount());
+    assertEquals(1, new JPAQuery<TestModel>(em).from(qTestModel)
+        .where(qTestModel.id.eq(tm.getId()),
+            QueryDslHelper.flattenedJsonIndexEq(qTestModel.testAttr,
+                qTestModel.id, "words[0].abc", "XYZ"))
+        .fetchCount());
+    assertEquals(0, new JPAQuery<TestModel>(em).from(qTestModel)
+        .where(qTestModel.id.eq(tm.getId()),
+            QueryDslHelper.flattenedJsonIndexLike(qTestModel.testAttr,
+                qTestModel.id, "words[1].DEF", "%"))
+        .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonPatchesOfManyEntities() throws IOException {
+    TestIndexedModel first = new TestIndexedModel();
+    first.setProps(objectMapper.readTree("{\"a\":1,\"b\":1}"));
+    TestIndexedModel second = new TestIndexedModel();
+    second.setProps(objectMapper.readTree("{\"a\":1,\"c\":2}"));
+    em.persist(first);
+    em.persist(second);
+    em.flush();
+    em.clear();
+
+    QTestIndexedModel qModel = QTestIndexedModel.testIndexedModel;
+    assertEquals(2, FlattenedJsonPatches.patch(em, qModel, qModel.props,
+        qModel.id.in(first.getId(), second.getId()),
+        FlattenedJsonDiff.between("{\"a\":1,\"b\":1}", "{\"a\":2,\"b\":1}"),
+        true));
+
+    assertEquals(objectMapper.readTree("{\"a\":2,\"b\":1}"),
+        em.find(TestIndexedModel.class, first.getId()).getProps());
+    assertEquals(objectMapper.readTree("{\"a\":2,\"c\":2}"),
+        em.find(TestIndexedModel.class, second.getId()).getProps());
+    assertEquals(2, new JPAQuery<TestIndexedModel>(em).from(qModel)
+        .where(qModel.id.in(first.getId(), second.getId()),
+            QueryDslHelper.flattenedJsonIndexEq(qModel.props, qModel.id, "a",
+                "2"))
+        .fetchCount());
+  }
+
+  @Test
+  @Transactional
+  public void testFlattenedJsonPatchesOfCompactColumn() throws IOException {
+    TestCompactModel model = new TestCompactModel();
+    model.setProps(objectMapper.readTree("{\"a\":1}"));
+    em.persist(model);
+    em.flush();
+    em.clear();
+
+    QTestCompactModel qModel = QTestCompactModel.testCompactModel;
+    assertEquals(1,
+        FlattenedJsonPatches.patch(em, qModel, qModel.props,
+            qModel.id.eq(model.getId()),
+            FlattenedJsonDiff.between("{\"a\":1}", "{\"a\":2}"), true));
+
+    String dbData = (String) em
+        .createNativeQuery("SELECT props FROM test_compact_model WHERE id = ?")
+        .setParameter(1, model.getId()).getSingleResult();
+    assertTrue(CompactFlattenedJson.isCompact(dbData));
+    assertEquals(objectMapper.readTree("{\"a\":2}"),
+        em.find(TestCompactModel.class, model.getId()).getProps());
+  }
+
+}
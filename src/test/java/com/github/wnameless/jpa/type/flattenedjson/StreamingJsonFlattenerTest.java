@@ -0,0 +1,120 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.json.flattener.FlattenMode;
+import com.github.wnameless.json.flattener.JsonFlattener;
+
+public class StreamingJsonFlattenerTest {
+
+  ObjectMapper objectMapper = new ObjectMapper();
+
+  StreamingJsonFlattener flattener = new StreamingJsonFlattener(objectMapper);
+
+  Function<JsonFlattener, JsonFlattener> customizer =
+      FlattenedJsonTypeConfigurer.INSTANCE.getJsonFlattenerCustomizer();
+
+  @After
+  public void restoreCustomizer() {
+    FlattenedJsonTypeConfigurer.INSTANCE.setJsonFlattenerCustomizer(customizer);
+    FlattenedJsonTypeConfigurer.INSTANCE.setCanonicalFlattening(false);
+  }
+
+  private String jsonFlatten(Object value) throws IOException {
+    return new JsonFlattener(objectMapper.writeValueAsString(value)).flatten();
+  }
+
+  @SuppressWarnings({ "unchecked", "serial", "rawtypes" })
+  @Test
+  public void testFlattenPojo() throws IOException {
+    TestModelAttr tma = new TestModelAttr();
+    tma.getNumbers().add(3);
+    tma.getNumbers().add(2);
+    tma.getWords().add(new HashMap() {
+      {
+        put("abc", "XYZ");
+      }
+    });
+
+    assertEquals(
+        "{\"numbers[0]\":3,\"numbers[1]\":2,\"words[0].abc\":\"XYZ\"}",
+        flattener.flatten(tma));
+    assertEquals(jsonFlatten(tma), flattener.flatten(tma));
+  }
+
+  @Test
+  public void testFlattenJsonNode() throws IOException {
+    JsonNode node = objectMapper.readTree("{\"a\":{\"b\":[1,[2.50,1e10]],"
+        + "\"c.d\":\"\\\"/\\u00e9\\t\",\"e\":{},\"f\":[]},\"g\":null,"
+        + "\"h\":-0.0,\"i\":12345678901234567890,\"j\":true}");
+
+    assertEquals(jsonFlatten(node), flattener.flatten(node));
+  }
+
+  @Test
+  public void testFlattenRootValues() throws IOException {
+    for (Object value : new Object[] { null, 1, 1.5, 1e10, "abc", true,
+        new int[0], new int[] { 1, 2 }, new HashMap<>() }) {
+      assertEquals(jsonFlatten(value), flattener.flatten(value));
+    }
+  }
+
+  @Test
+  public void testFlattenWithCustomizer() throws IOException {
+    FlattenedJsonTypeConfigurer.INSTANCE
+        .setJsonFlattenerCustomizer(jf -> jf.withSeparator('/'));
+
+    assertEquals("{\"a/b[0]\":1}",
+        flattener.flatten(objectMapper.readTree("{\"a\":{\"b\":[1]}}")));
+  }
+
+  @Test
+  public void testFlattenCanonical() throws IOException {
+    FlattenedJsonTypeConfigurer.INSTANCE.setCanonicalFlattening(true);
+    JsonNode node1 = objectMapper.readTree("{\"b\":{\"y\":1,\"x\":[0,1,2,3,"
+        + "4,5,6,7,8,9,{\"k\":10}]},\"a.b\":\"\\\"\",\"a\":{}}");
+    JsonNode node2 = objectMapper.readTree("{\"a\":{},\"a.b\":\"\\\"\","
+        + "\"b\":{\"x\":[0,1,2,3,4,5,6,7,8,9,{\"k\":10}],\"y\":1}}");
+
+    String flattened = flattener.flatten(node1);
+    assertEquals("{\"[\\\"a.b\\\"]\":\"\\\"\",\"a\":{},\"b.x[0]\":0,"
+        + "\"b.x[1]\":1,\"b.x[2]\":2,\"b.x[3]\":3,\"b.x[4]\":4,\"b.x[5]\":5,"
+        + "\"b.x[6]\":6,\"b.x[7]\":7,\"b.x[8]\":8,\"b.x[9]\":9,"
+        + "\"b.x[10].k\":10,\"b.y\":1}", flattened);
+    assertEquals(flattened, flattener.flatten(node2));
+    assertEquals(node1, new StreamingJsonUnflattener(objectMapper)
+        .unflatten(flattened, new TypeReference<JsonNode>() {}));
+
+    FlattenedJsonTypeConfigurer.INSTANCE.setJsonFlattenerCustomizer(
+        jf -> jf.withFlattenMode(FlattenMode.KEEP_ARRAYS));
+    assertEquals("{\"[\\\"a.b\\\"]\":\"\\\"\",\"a\":{},"
+        + "\"b.x\":[0,1,2,3,4,5,6,7,8,9,{\"k\":10}],\"b.y\":1}",
+        flattener.flatten(node1));
+  }
+
+  @Test
+  public void testCanonicalKeyOrder() {
+    String[] keys = { "a", "a.b", "a[2]", "a[10]", "a[10].b", "a[10][1]",
+        "a[10][10]", "ab", "b" };
+    for (int i = 0; i < keys.length; i++) {
+      for (int j = 0; j < keys.length; j++) {
+        int c = StreamingJsonFlattener.CANONICAL_KEY_ORDER.compare(keys[i],
+            keys[j]);
+        assertTrue(keys[i] + " vs " + keys[j],
+            Integer.signum(c) == Integer.compare(i, j));
+      }
+    }
+  }
+
+}
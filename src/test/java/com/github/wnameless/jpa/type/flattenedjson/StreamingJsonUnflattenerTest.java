@@ -0,0 +1,103 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.wnameless.json.flattener.JsonFlattener;
+import com.github.wnameless.json.unflattener.JsonUnflattener;
+
+public class StreamingJsonUnflattenerTest {
+
+  ObjectMapper objectMapper = new ObjectMapper();
+
+  StreamingJsonUnflattener unflattener =
+      new StreamingJsonUnflattener(objectMapper);
+
+  TypeReference<JsonNode> jsonNodeType = new TypeReference<JsonNode>() {};
+
+  private void assertUnflatten(String flattenedJson) throws IOException {
+    assertEquals(
+        objectMapper.readTree(
+            new JsonUnflattener(flattenedJson).unflatten()),
+        unflattener.unflatten(flattenedJson, jsonNodeType));
+  }
+
+  @Test
+  public void testUnflattenPojo() {
+    TestModelAttr tma = unflattener.unflatten(
+        "{\"numbers[0]\":3,\"numbers[1]\":2,\"words[0].abc\":\"XYZ\"}",
+        new TypeReference<TestModelAttr>() {});
+
+    assertEquals(3, (int) tma.getNumbers().get(0));
+    assertEquals(2, (int) tma.getNumbers().get(1));
+    assertEquals("XYZ", tma.getWords().get(0).get("abc"));
+  }
+
+  @Test
+  public void testUnflattenNestedMapsAndArrays() throws IOException {
+    assertUnflatten("{\"a.b[0]\":1,\"a.b[1][0]\":2.5,\"a.c\":{},\"a.d\":[],"
+        + "\"e[0].f\":null,\"e[1].g\":true}");
+    assertUnflatten("{\"[0].a\":1,\"[1]\":\"x\"}");
+  }
+
+  @Test
+  public void testUnflattenEscapedKeys() throws IOException {
+    assertUnflatten("{\"[\\\"a.b\\\"]\":1,\"c[\\\"d[0]\\\"].e\":\"\\\"/\\t\"}");
+  }
+
+  @Test
+  public void testRoundTripQuotedNamesWithClosingQuote() throws IOException {
+    StreamingJsonFlattener flattener = new StreamingJsonFlattener(objectMapper);
+    for (String json : new String[] { "{\"a\\\"]b.c\":1}",
+        "{\"a\\\\\\\"]\":{\"b\":1}}", "{\"x]y.z\":{\"q\":2,\"r\\\"]\":[3]}}" }) {
+      JsonNode node = objectMapper.readTree(json);
+      assertEquals(node,
+          unflattener.unflatten(JsonFlattener.flatten(json), jsonNodeType));
+      assertEquals(node,
+          unflattener.unflatten(flattener.flatten(node), jsonNodeType));
+    }
+  }
+
+  @Test
+  public void testUnflattenUnorderedKeys() throws IOException {
+    assertUnflatten("{\"a.b\":1,\"c\":2,\"a.d\":3}");
+    assertUnflatten("{\"a[2]\":1,\"a[0]\":2}");
+  }
+
+  @Test
+  public void testUnflattenRootValues() throws IOException {
+    for (String json : new String[] { "{}", "[]", "1", "\"abc\"", "null" }) {
+      assertUnflatten(json);
+    }
+  }
+
+  @Test
+  public void testKeyCache() {
+    FlattenedJsonTypeConfigurer configurer =
+        FlattenedJsonTypeConfigurer.INSTANCE;
+    FlattenedJsonKeyCache keyCache = configurer.getKeyCache();
+    try {
+      JsonNode a = unflattener.unflatten("{\"abc.def[0]\":1}", jsonNodeType);
+      JsonNode b = unflattener.unflatten("{\"abc.def[0]\":2}", jsonNodeType);
+      assertSame(a.fieldNames().next(), b.fieldNames().next());
+      assertSame(a.get("abc").fieldNames().next(),
+          b.get("abc").fieldNames().next());
+
+      configurer.setKeyCache(null);
+      a = unflattener.unflatten("{\"abc.def[0]\":1}", jsonNodeType);
+      b = unflattener.unflatten("{\"abc.def[0]\":2}", jsonNodeType);
+      assertNotSame(a.fieldNames().next(), b.fieldNames().next());
+    } finally {
+      configurer.setKeyCache(keyCache);
+    }
+  }
+
+}
@@ -0,0 +1,58 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexed;
+
+import lombok.Data;
+
+@Data
+@Entity
+public class TestCompactModel {
+
+  public static final FlattenedJsonCodec IDENTITY = new FlattenedJsonCodec() {
+
+    @Override
+    public String getName() {
+      return "identity";
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) {
+      return out;
+    }
+
+    @Override
+    public InputStream decode(InputStream in) {
+      return in;
+    }
+
+  };
+
+  public static class CompactJsonNodeConverter extends JsonNodeConverter {
+
+    @Override
+    protected FlattenedJsonCodec getCodec() {
+      return IDENTITY;
+    }
+
+  }
+
+  @GeneratedValue
+  @Id
+  Long id;
+
+  @Column(length = 4000)
+  @Convert(converter = CompactJsonNodeConverter.class)
+  @FlattenedJsonIndexed
+  JsonNode props;
+
+}
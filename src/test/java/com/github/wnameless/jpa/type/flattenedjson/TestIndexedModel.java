@@ -0,0 +1,40 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexed;
+
+@Entity(name = "IndexedModel")
+public class TestIndexedModel {
+
+  private Long id;
+
+  private JsonNode props;
+
+  @GeneratedValue
+  @Id
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  @Column(length = 4000)
+  @Convert(converter = JsonNodeConverter.class)
+  @FlattenedJsonIndexed
+  public JsonNode getProps() {
+    return props;
+  }
+
+  public void setProps(JsonNode props) {
+    this.props = props;
+  }
+
+}
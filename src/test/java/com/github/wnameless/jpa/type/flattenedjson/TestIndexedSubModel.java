@@ -0,0 +1,6 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import javax.persistence.Entity;
+
+@Entity
+public class TestIndexedSubModel extends TestIndexedModel {}
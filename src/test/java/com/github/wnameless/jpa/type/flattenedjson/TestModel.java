@@ -7,6 +7,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.github.wnameless.jpa.type.flattenedjson.index.FlattenedJsonIndexed;
 
 import lombok.Data;
 
@@ -24,6 +25,7 @@ public class TestModel {
 
   @Column(length = 4000)
   @Convert(converter = TestModelAttrConverter.class)
+  @FlattenedJsonIndexed
   TestModelAttr testAttr;
 
 }
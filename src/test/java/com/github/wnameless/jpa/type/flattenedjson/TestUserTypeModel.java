@@ -0,0 +1,26 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import org.hibernate.annotations.Type;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.Data;
+
+@Data
+@Entity
+public class TestUserTypeModel {
+
+  @GeneratedValue
+  @Id
+  Long id;
+
+  @Column(length = 4000)
+  @Type(type = "com.github.wnameless.jpa.type.flattenedjson.hibernate.JsonNodeUserType")
+  JsonNode props;
+
+}
@@ -0,0 +1,142 @@
+package com.github.wnameless.jpa.type.flattenedjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+public class ToFlattenedJsonConverterTest {
+
+  Supplier<ObjectMapper> objectMapperFactory =
+      FlattenedJsonTypeConfigurer.INSTANCE.getObjectMapperFactory();
+
+  @After
+  public void restoreObjectMapperFactory() {
+    FlattenedJsonTypeConfigurer.INSTANCE
+        .setObjectMapperFactory(objectMapperFactory);
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    JsonNodeConverter converter = new JsonNodeConverter();
+    JsonNode node = new ObjectMapper()
+        .readTree("{\"a\":{\"b\":[1,{\"c\":\"x\"}]},\"d\":1.5}");
+
+    String flattened = converter.convertToDatabaseColumn(node);
+    assertEquals("{\"a.b[0]\":1,\"a.b[1].c\":\"x\",\"d\":1.5}", flattened);
+    assertEquals(node, converter.convertToEntityAttribute(flattened));
+    assertEquals(node, new JsonNodeConverter().convertToEntityAttribute(
+        new JsonNodeConverter().convertToDatabaseColumn(node)));
+  }
+
+  @Test
+  public void testObjectMapperFactoryChange() {
+    TestModelAttrConverter converter = new TestModelAttrConverter();
+    TestModelAttr tma = new TestModelAttr();
+    tma.getNumbers().add(1);
+    assertEquals("{\"numbers[0]\":1,\"words\":[]}",
+        converter.convertToDatabaseColumn(tma));
+
+    FlattenedJsonTypeConfigurer.INSTANCE.setObjectMapperFactory(
+        () -> new ObjectMapper().enable(SerializationFeature.WRAP_ROOT_VALUE));
+
+    assertEquals(
+        "{\"TestModelAttr.numbers[0]\":1,\"TestModelAttr.words\":[]}",
+        new TestModelAttrConverter().convertToDatabaseColumn(tma));
+    assertEquals("{\"numbers[0]\":1,\"words\":[]}",
+        converter.convertToDatabaseColumn(tma));
+  }
+
+  @Test
+  public void testConvertAll() {
+    TestModelAttrConverter converter = new TestModelAttrConverter();
+    List<TestModelAttr> attrs = new LinkedList<>();
+    for (int i = 0; i < ToFlattenedJsonConverter.PARALLEL_BATCH_THRESHOLD * 3
+        + 1; i++) {
+      TestModelAttr tma = new TestModelAttr();
+      tma.getNumbers().add(i);
+      attrs.add(tma);
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      List<String> sequential = converter.convertAllToDatabaseColumns(attrs);
+      List<String> parallel =
+          converter.convertAllToDatabaseColumns(attrs, pool);
+      assertEquals(attrs.size(), parallel.size());
+      assertEquals(sequential, parallel);
+      for (int i = 0; i < attrs.size(); i++) {
+        assertEquals(converter.convertToDatabaseColumn(attrs.get(i)),
+            parallel.get(i));
+      }
+
+      List<TestModelAttr> unflattened =
+          converter.convertAllToEntityAttributes(parallel, pool);
+      assertEquals(converter.convertAllToEntityAttributes(sequential).size(),
+          unflattened.size());
+      for (int i = 0; i < attrs.size(); i++) {
+        assertEquals(attrs.get(i).getNumbers(),
+            unflattened.get(i).getNumbers());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testConvertAllFailure() {
+    JsonNodeConverter converter = new JsonNodeConverter();
+    List<String> flattened = new ArrayList<>();
+    for (int i = 0; i < ToFlattenedJsonConverter.PARALLEL_BATCH_THRESHOLD
+        * 2; i++) {
+      flattened.add(i == 300 ? "{\"a\":" : "{\"a\":" + i + "}");
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      converter.convertAllToEntityAttributes(flattened, pool);
+      fail();
+    } catch (RuntimeException e) {
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testCompactConverter() {
+    TestModelAttrConverter plain = new TestModelAttrConverter();
+    TestModelAttrConverter compact = new TestModelAttrConverter() {
+
+      @Override
+      protected FlattenedJsonCodec getCodec() {
+        return FlattenedJsonCodec.DEFLATE;
+      }
+
+    };
+    TestModelAttr tma = new TestModelAttr();
+    tma.getNumbers().add(1);
+
+    String dbData = compact.convertToDatabaseColumn(tma);
+    assertTrue(CompactFlattenedJson.isCompact(dbData));
+    assertEquals(plain.convertToDatabaseColumn(tma),
+        CompactFlattenedJson.decode(dbData, null));
+    assertEquals(tma, compact.convertToEntityAttribute(dbData));
+    assertEquals(tma, plain.convertToEntityAttribute(dbData));
+    assertEquals(tma, compact
+        .convertToEntityAttribute(plain.convertToDatabaseColumn(tma)));
+  }
+
+}
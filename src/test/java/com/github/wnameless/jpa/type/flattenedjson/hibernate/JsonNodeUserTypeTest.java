@@ -0,0 +1,64 @@
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.wnameless.jpa.type.flattenedjson.FlattenedJsonSnapshot;
+
+public class JsonNodeUserTypeTest {
+
+  JsonNodeUserType userType = new JsonNodeUserType();
+
+  @Test
+  public void testDirtyChecking() throws IOException {
+    JsonNode node =
+        new ObjectMapper().readTree("{\"a\":{\"b\":[1,2]},\"c\":\"d\"}");
+    Object loadedState = userType.deepCopy(node);
+
+    assertNotSame(node, loadedState);
+    assertSame(loadedState, userType.deepCopy(loadedState));
+    assertEquals(node, userType.replace(loadedState, null, null));
+    assertTrue(userType.equals(loadedState, node));
+    assertEquals(
+        FlattenedJsonSnapshot.of("{\"a.b[0]\":1,\"a.b[1]\":2,\"c\":\"d\"}")
+            .hashCode(),
+        userType.hashCode(loadedState));
+    assertEquals(userType.hashCode(node), userType.hashCode(loadedState));
+
+    ((ObjectNode) node).put("c", "e");
+    assertFalse(userType.equals(loadedState, node));
+    assertFalse(userType.equals(loadedState, null));
+    assertTrue(userType.equals(null, null));
+    assertNull(userType.deepCopy(null));
+  }
+
+  @Test
+  public void testReplaceAndCache() throws IOException {
+    JsonNode node = new ObjectMapper().readTree("{\"a\":[{\"b\":true}]}");
+
+    assertEquals("{\"a[0].b\":true}", userType.disassemble(node));
+    assertEquals(node, userType.assemble(userType.disassemble(node), null));
+    Object copy = userType.replace(node, null, null);
+    assertEquals(node, copy);
+    assertNotSame(node, copy);
+
+    Object loadedState = userType.deepCopy(node);
+    assertEquals("{\"a[0].b\":true}", userType.disassemble(loadedState));
+    assertEquals(node, userType.assemble(userType.disassemble(loadedState),
+        null));
+    ((ObjectNode) node).put("c", 1);
+    assertEquals("{\"a[0].b\":true}", userType.disassemble(loadedState));
+  }
+
+}
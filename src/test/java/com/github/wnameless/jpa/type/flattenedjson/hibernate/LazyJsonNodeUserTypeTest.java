@@ -0,0 +1,87 @@
+package com.github.wnameless.jpa.type.flattenedjson.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.wnameless.jpa.type.flattenedjson.LazyFlattenedJson;
+import com.github.wnameless.jpa.type.flattenedjson.LazyJsonNodeConverter;
+
+public class LazyJsonNodeUserTypeTest {
+
+  LazyJsonNodeUserType userType = new LazyJsonNodeUserType();
+
+  // Key order differs from the one of StreamingJsonFlattener on purpose
+  String dbData = "{\"b\":1,\"a.c[0]\":\"x\"}";
+
+  @SuppressWarnings("unchecked")
+  private LazyFlattenedJson<JsonNode> assemble(Object cached) {
+    return (LazyFlattenedJson<JsonNode>) userType
+        .assemble((String) cached, null);
+  }
+
+  @Test
+  public void testCacheUnaccessedValue() {
+    LazyFlattenedJson<JsonNode> lazy =
+        new LazyJsonNodeConverter().convertToEntityAttribute(dbData);
+
+    assertSame(dbData, userType.disassemble(lazy));
+    LazyFlattenedJson<JsonNode> assembled = assemble(dbData);
+    assertFalse(assembled.isMaterialized());
+    assertEquals(lazy, assembled);
+    assertFalse(lazy.isMaterialized());
+  }
+
+  @Test
+  public void testCacheAccessedValue() throws IOException {
+    LazyFlattenedJson<JsonNode> lazy = assemble(dbData);
+    ((ObjectNode) lazy.get()).put("b", 2);
+
+    assertEquals("{\"b\":2,\"a.c[0]\":\"x\"}", userType.disassemble(lazy));
+    LazyFlattenedJson<JsonNode> assembled =
+        assemble(userType.disassemble(lazy));
+    assertFalse(assembled.isMaterialized());
+    assertEquals(
+        new ObjectMapper().readTree("{\"b\":2,\"a\":{\"c\":[\"x\"]}}"),
+        assembled.get());
+  }
+
+  @Test
+  public void testDirtyChecking() {
+    LazyFlattenedJson<JsonNode> lazy = assemble(dbData);
+    Object loadedState = userType.deepCopy(lazy);
+
+    assertNotSame(lazy, loadedState);
+    assertTrue(userType.equals(loadedState, lazy));
+    assertEquals(userType.hashCode(loadedState), userType.hashCode(lazy));
+    assertFalse(lazy.isMaterialized());
+    assertFalse(((LazyFlattenedJson<?>) loadedState).isMaterialized());
+
+    ((ObjectNode) lazy.get()).put("b", 1);
+    assertTrue(userType.equals(loadedState, lazy));
+    assertFalse(((LazyFlattenedJson<?>) loadedState).isMaterialized());
+    ((ObjectNode) lazy.get()).put("b", 2);
+    assertFalse(userType.equals(loadedState, lazy));
+    assertEquals(userType.hashCode(lazy),
+        userType.hashCode(userType.deepCopy(lazy)));
+  }
+
+  @Test
+  public void testNull() {
+    assertNull(userType.disassemble(null));
+    assertNull(userType.assemble(null, null));
+    assertNull(userType.deepCopy(null));
+    assertTrue(userType.equals(null, null));
+  }
+
+}